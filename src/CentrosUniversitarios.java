@@ -1,13 +1,24 @@
+import java.util.Arrays;
 
 /**
  * Proyecto final de la asignatura Programación II.
  * El método {@link #main(String[])} ejecuta el programa llamando a {@link docencia.Arranque#inicio()}.
+ * Con el argumento "servidor [puerto]" arranca en su lugar el servidor de consultas ({@link docencia.ServidorConsultas})
+ * y con "simulacion [ficheroAvisos]" ejecuta las instrucciones sin escribir ningún fichero ({@link docencia.Arranque#simulacion(String)}).
  * @author Guillermo Barreiro Fernández
  *
  */
 public class CentrosUniversitarios {
 
 	public static void main(String[] args) {
+		if(args.length>0 && args[0].equalsIgnoreCase("servidor")) {
+			docencia.ServidorConsultas.iniciar(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if(args.length>0 && args[0].equalsIgnoreCase("simulacion")) {
+			docencia.Arranque.simulacion(args.length>1 ? args[1] : "avisos_simulacion.txt");
+			return;
+		}
 		docencia.Arranque.inicio();
 
 	}
@@ -0,0 +1,57 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Comprobación de regresión de la etapa de persistencia (docencia.PersistenciaDiferida): un lote de solo lectura
+ * más largo que el retraso máximo de la persistencia tiene que terminar. Antes, las líneas que no dejaban nada
+ * por escribir contaban para el retraso, y en modo simulación (sin punto de control) el hilo principal esperaba
+ * indefinidamente a un hilo de persistencia que no tenía nada que hacer.
+ *
+ * Uso: java [-Dcentros.datos=directorio] -cp bin benchmarks.ComprobacionRetraso
+ * Copia los ficheros del directorio de datos (por defecto ficheros/) a un directorio temporal, con un ejecucion.txt de
+ * {@link #LINEAS} consultas de ocupación de un aula, y lo ejecuta en modo simulación con un retraso máximo de 2 líneas.
+ * Termina con código 0 si el lote acaba antes de {@link #ESPERA_SEGUNDOS} segundos y con código 1 si no.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class ComprobacionRetraso {
+
+	private static final int LINEAS = 1100;
+	private static final int ESPERA_SEGUNDOS = 60;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String origen = System.getProperty("centros.datos", "ficheros");
+		Path directorio = Files.createTempDirectory("centros-retraso");
+		try(DirectoryStream<Path> ficheros = Files.newDirectoryStream(Paths.get(origen))) {
+			for(Path fichero: ficheros) {
+				if(Files.isRegularFile(fichero)) Files.copy(fichero, directorio.resolve(fichero.getFileName()));
+			}
+		}
+		String aula = Files.readAllLines(directorio.resolve("aulas.txt")).get(0).trim();
+		try(PrintWriter ejecucion = new PrintWriter(Files.newBufferedWriter(directorio.resolve("ejecucion.txt")))) {
+			for(int i = 1; i<=LINEAS; i++) ejecucion.println(i + " OcupacionAula " + aula);
+		}
+
+		// Hay que fijar las propiedades antes de que se carguen las clases que las leen
+		System.setProperty("centros.datos", directorio.toString());
+		System.setProperty("centros.persistencia.retrasoMaximo", "2");
+		String avisos = directorio.resolve("avisos_simulacion.txt").toString();
+		Thread lote = new Thread(() -> docencia.Arranque.simulacion(avisos), "lote");
+		lote.setDaemon(true);
+		lote.start();
+		lote.join(ESPERA_SEGUNDOS*1000L);
+
+		if(lote.isAlive()) {
+			System.err.println("FALLO: el lote de " + LINEAS + " líneas de solo lectura no ha terminado en " + ESPERA_SEGUNDOS + " s");
+			System.exit(1);
+		}
+		System.out.println("OK: el lote de " + LINEAS + " líneas de solo lectura ha terminado");
+	}
+
+}
@@ -0,0 +1,534 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Genera un conjunto de datos sintético, del tamaño que se quiera, para medir el rendimiento del programa.
+ * Escribe en un directorio los ficheros alumnos.txt, profesores.txt, asignaturas.txt, aulas.txt, pod.txt y cursoAcademico.txt,
+ * los ficheros de notas de las asignaturas que se evalúan y un fichero ejecucion.txt con una mezcla de instrucciones correctas
+ * e incorrectas, todo con el mismo formato que los ficheros de ejemplo.
+ * Los datos son coherentes entre sí: los grupos están en aulas existentes de su mismo tipo, los profesores imparten
+ * grupos que existen y que figuran en su POD, y los alumnos tienen superadas asignaturas de cursos anteriores
+ * y están matriculados en grupos existentes de su curso.
+ *
+ * Cada elemento (alumno, profesor, línea de ejecucion.txt...) se genera a partir de su posición con su propio generador
+ * aleatorio, por lo que el resultado no depende del número de hilos. Los ficheros se generan en paralelo por bloques,
+ * que se escriben en orden en cuanto están listos.
+ *
+ * Uso: java -cp bin benchmarks.GeneradorDatos directorio [alumnos=N] [profesores=N] [asignaturas=N] [grupos=N] [aulas=N]
+ * [instrucciones=N] [evaluadas=N] [hilos=N] [semilla=N]
+ * Después se ejecuta el programa con -Dcentros.datos=directorio.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class GeneradorDatos {
+
+	private static final String LETRAS_DNI = "TRWAGMYFPDXBNJZSQVHLCKE";
+	private static final String DIAS = "LMXJV";
+	private static final int[] HORAS_INICIO = {9, 11, 15, 17}; // sesiones de 2 horas, sin la hora de la comida
+	private static final int DURACION = 2;
+	private static final int CURSOS = 4;
+	private static final int TRONCALES = 5; // asignaturas de cada curso que son prerrequisito de las del curso siguiente
+	private static final int CURSO_ACTUAL = 17; // curso académico 17/18
+	private static final int ELEMENTOS_POR_BLOQUE = 8192;
+	private static final int TAMANO_BUFFER_SALIDA = 1 << 20;
+
+	private static final String[] NOMBRES = {"Juan", "Pablo", "Sergio", "Maria", "Lucia", "Ana", "Carlos", "Laura", "David",
+			"Marta", "Javier", "Elena", "Daniel", "Sara", "Alvaro", "Paula", "Francisco", "Irene", "Manuel", "Andrea"};
+	private static final String[] APELLIDOS = {"Garcia", "Fernandez", "Gonzalez", "Rodriguez", "Lopez", "Martinez", "Sanchez",
+			"Perez", "Gomez", "Martin", "Jimenez", "Ruiz", "Hernandez", "Diaz", "Moreno", "Alvarez", "Romero", "Alonso",
+			"Gutierrez", "Navarro", "Torres", "Dominguez", "Vazquez", "Ramos", "Gil", "Ramirez", "Serrano", "Blanco",
+			"Iglesias", "Varela", "Soto", "Rey", "Puentes", "Hermida"};
+	private static final String[] DEPARTAMENTOS = {"Ingenieria Telematica", "Teoria de la Senal", "Matematica Aplicada",
+			"Tecnologia Electronica"};
+	private static final String[] DEPARTAMENTOS_SIGLAS = {"DET", "DTSC", "DMA", "DTE"}; // en ejecucion.txt no hay espacios
+	private static final String[] DOMINIOS = {"gmail.com", "yahoo.es", "hotmail.com", "uvigo.es"};
+
+	// Parámetros
+	private final File directorio;
+	private final int alumnos, profesores, asignaturas, aulas, instrucciones, evaluadas;
+	private final long semilla;
+	private final ExecutorService pool;
+	private final int hilos;
+
+	// Estructura común, calculada antes de generar los ficheros
+	private final int[][] asignaturasCurso = new int[CURSOS + 1][]; // asignaturas de cada curso (1,...,4)
+	private final int[] gruposA, gruposB; // número de grupos A y B de cada asignatura
+	private final int[] grupoAsignatura, grupoId, grupoProfesor, grupoAula, grupoFranja; // datos de cada grupo
+	private final char[] grupoTipo;
+	private final int[] primerGrupo; // posición del primer grupo de cada asignatura
+	private final int[][] gruposProfesor; // grupos que imparte cada profesor
+
+	private GeneradorDatos(File directorio, int alumnos, int profesores, int asignaturas, int grupos, int aulas,
+			int instrucciones, int evaluadas, int hilos, long semilla) {
+		this.directorio = directorio;
+		this.alumnos = alumnos;
+		this.profesores = profesores;
+		this.asignaturas = asignaturas;
+		this.aulas = aulas;
+		this.instrucciones = instrucciones;
+		this.evaluadas = Math.min(evaluadas, CURSOS);
+		this.semilla = semilla;
+		this.hilos = hilos;
+		this.pool = Executors.newFixedThreadPool(hilos);
+
+		// Asignaturas de cada curso: la asignatura s es del curso 1 + s%4
+		for(int curso = 1; curso<=CURSOS; curso++) {
+			int numero = (asignaturas - curso + CURSOS)/CURSOS;
+			asignaturasCurso[curso] = new int[numero];
+			for(int j = 0; j<numero; j++) asignaturasCurso[curso][j] = j*CURSOS + curso - 1;
+		}
+
+		// Grupos de cada asignatura: un tercio A y el resto B
+		gruposA = new int[asignaturas];
+		gruposB = new int[asignaturas];
+		primerGrupo = new int[asignaturas];
+		int total = 0;
+		for(int s = 0; s<asignaturas; s++) {
+			int numero = Math.max(1, grupos/asignaturas + (s<grupos%asignaturas ? 1 : 0));
+			gruposA[s] = Math.max(1, numero/3);
+			gruposB[s] = numero - gruposA[s];
+			primerGrupo[s] = total;
+			total += numero;
+		}
+
+		// Cada grupo ocupa una franja (día y hora) de un aula de su tipo, y lo imparte un profesor
+		grupoAsignatura = new int[total];
+		grupoId = new int[total];
+		grupoTipo = new char[total];
+		grupoProfesor = new int[total];
+		grupoAula = new int[total];
+		grupoFranja = new int[total];
+		int franjas = DIAS.length()*HORAS_INICIO.length;
+		int aulasA = (aulas + 1)/2, aulasB = aulas - aulasA; // aulas pares de tipo A, impares de tipo B
+		int siguienteA = 0, siguienteB = 0;
+		int[] numeroGruposProfesor = new int[profesores];
+		for(int s = 0, g = 0; s<asignaturas; s++) {
+			for(int j = 0; j<gruposA[s] + gruposB[s]; j++, g++) {
+				boolean tipoA = j<gruposA[s];
+				grupoAsignatura[g] = s;
+				grupoTipo[g] = tipoA ? 'A' : 'B';
+				grupoId[g] = tipoA ? j + 1 : j - gruposA[s] + 1;
+				int posicion = tipoA || aulasB==0 ? siguienteA++ : siguienteB++;
+				int aulasTipo = tipoA || aulasB==0 ? aulasA : aulasB;
+				grupoAula[g] = 2*((posicion/franjas)%aulasTipo) + (tipoA || aulasB==0 ? 0 : 1);
+				grupoFranja[g] = posicion%franjas;
+				grupoProfesor[g] = (int) ((s*31L + j*7L) % profesores);
+				numeroGruposProfesor[grupoProfesor[g]]++;
+			}
+		}
+		gruposProfesor = new int[profesores][];
+		for(int p = 0; p<profesores; p++) gruposProfesor[p] = new int[numeroGruposProfesor[p]];
+		int[] ocupados = new int[profesores];
+		for(int g = 0; g<total; g++) gruposProfesor[grupoProfesor[g]][ocupados[grupoProfesor[g]]++] = g;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if(args.length<1) {
+			System.out.println("Uso: java benchmarks.GeneradorDatos directorio [alumnos=N] [profesores=N] [asignaturas=N] [grupos=N]"
+					+ " [aulas=N] [instrucciones=N] [evaluadas=N] [hilos=N] [semilla=N]");
+			return;
+		}
+		File directorio = new File(args[0]);
+		long alumnos = 10_000, profesores = 1_000, asignaturas = 200, grupos = 2_000, aulas = 100, instrucciones = 100_000;
+		long evaluadas = 2, hilos = Runtime.getRuntime().availableProcessors(), semilla = 42;
+		for(int i = 1; i<args.length; i++) {
+			String[] opcion = args[i].split("=", 2);
+			long valor = Long.parseLong(opcion[1].replace("_", ""));
+			switch(opcion[0]) {
+			case "alumnos": alumnos = valor; break;
+			case "profesores": profesores = valor; break;
+			case "asignaturas": asignaturas = valor; break;
+			case "grupos": grupos = valor; break;
+			case "aulas": aulas = valor; break;
+			case "instrucciones": instrucciones = valor; break;
+			case "evaluadas": evaluadas = valor; break;
+			case "hilos": hilos = valor; break;
+			case "semilla": semilla = valor; break;
+			default: throw new IllegalArgumentException("Opción desconocida: " + opcion[0]);
+			}
+		}
+		if(asignaturas<CURSOS || profesores<1 || aulas<1 || alumnos<1) throw new IllegalArgumentException("Conjunto de datos demasiado pequeño");
+		directorio.mkdirs();
+
+		long inicio = System.nanoTime();
+		GeneradorDatos generador = new GeneradorDatos(directorio, (int) alumnos, (int) profesores, (int) asignaturas, (int) grupos,
+				(int) aulas, (int) instrucciones, (int) evaluadas, (int) hilos, semilla);
+		try {
+			generador.generar();
+		}finally {
+			generador.pool.shutdown();
+		}
+		System.out.printf("Datos generados en %s en %.1f s%n", directorio, (System.nanoTime() - inicio)/1e9);
+	}
+
+	/**
+	 * Genera todos los ficheros.
+	 */
+	private void generar() throws IOException {
+		escribirFichero("cursoAcademico.txt", 1, false, (i, sb) -> sb.append(CURSO_ACTUAL).append('/').append(CURSO_ACTUAL + 1)
+				.append('\n').append(35).append('\n'));
+		escribirFichero("aulas.txt", aulas, true, this::aula);
+		escribirFichero("asignaturas.txt", asignaturas, true, this::asignatura);
+		escribirFichero("profesores.txt", profesores, true, this::profesor);
+		escribirFichero("pod.txt", profesores, true, this::pod);
+		escribirFichero("alumnos.txt", alumnos, true, this::alumno);
+		for(int curso = 1; curso<=evaluadas; curso++) {
+			int evaluada = asignaturasCurso[curso][0];
+			escribirFichero(ficheroNotas(evaluada, 'A'), alumnos, false, (i, sb) -> nota(i, evaluada, 'A', sb));
+			escribirFichero(ficheroNotas(evaluada, 'B'), alumnos, false, (i, sb) -> nota(i, evaluada, 'B', sb));
+		}
+		escribirFichero("ejecucion.txt", instrucciones + evaluadas, false, this::instruccion);
+	}
+
+	// ELEMENTOS DE CADA FICHERO:
+
+	private void aula(int a, StringBuilder sb) {
+		sb.append(siglasAula(a)).append('\n').append(a%2==0 ? 'A' : 'B').append('\n').append(20 + (a*7)%40).append('\n');
+	}
+
+	private void asignatura(int s, StringBuilder sb) {
+		SplittableRandom rnd = aleatorio(1, s);
+		int curso = 1 + s%CURSOS;
+		sb.append(siglasAsignatura(s)).append('\n');
+		sb.append("Asignatura ").append(s).append('\n');
+		sb.append(curso).append('\n');
+		sb.append(1 + (s/CURSOS)%2).append('\n');
+		sb.append(dni(grupoProfesor[primerGrupo[s]] + alumnos)).append('\n'); // coordinador: el profesor de su primer grupo
+
+		// Prerrequisitos: hasta dos troncales del curso anterior
+		if(curso>1) {
+			int[] anteriores = asignaturasCurso[curso - 1];
+			int numero = rnd.nextInt(3);
+			for(int i = 0; i<numero; i++) {
+				if(i>0) sb.append(';');
+				sb.append(siglasAsignatura(anteriores[(s + i)%Math.min(TRONCALES, anteriores.length)]));
+			}
+		}
+		sb.append('\n');
+		sb.append(DURACION).append('\n').append(DURACION).append('\n');
+
+		// Grupos A y B
+		for(char tipo = 'A'; tipo<='B'; tipo++) {
+			int numero = tipo=='A' ? gruposA[s] : gruposB[s];
+			for(int j = 0; j<numero; j++) {
+				int g = primerGrupo[s] + (tipo=='A' ? j : gruposA[s] + j);
+				if(j>0) sb.append("; ");
+				sb.append(grupoId[g]).append(' ').append(DIAS.charAt(grupoFranja[g]/HORAS_INICIO.length)).append(' ')
+					.append(HORAS_INICIO[grupoFranja[g]%HORAS_INICIO.length]).append(' ').append(siglasAula(grupoAula[g]));
+			}
+			sb.append('\n');
+		}
+	}
+
+	private void profesor(int p, StringBuilder sb) {
+		SplittableRandom rnd = aleatorio(2, p);
+		sb.append(dni(alumnos + p)).append('\n');
+		nombre(rnd, sb).append('\n');
+		fecha(1 + rnd.nextInt(28), 1 + rnd.nextInt(12), 1955 + rnd.nextInt(35), sb).append('\n');
+		sb.append(rnd.nextInt(3)==0 ? "asociado" : "titular").append('\n');
+		sb.append(DEPARTAMENTOS[rnd.nextInt(DEPARTAMENTOS.length)]).append('\n');
+		int[] grupos = gruposProfesor[p];
+		for(int i = 0; i<grupos.length; i++) {
+			if(i>0) sb.append("; ");
+			int g = grupos[i];
+			sb.append(siglasAsignatura(grupoAsignatura[g])).append(' ').append(grupoTipo[g]).append(' ').append(grupoId[g]);
+		}
+		sb.append('\n');
+	}
+
+	/**
+	 * POD de un profesor: una entrada por asignatura y tipo de grupo que imparte, con margen para algún grupo más.
+	 * Todas las entradas de un profesor forman un único elemento (separadas entre sí por *).
+	 */
+	private void pod(int p, StringBuilder sb) {
+		SplittableRandom rnd = aleatorio(3, p);
+		int[] grupos = gruposProfesor[p];
+		boolean primero = true;
+		for(int i = 0; i<grupos.length; i++) {
+			int g = grupos[i];
+			boolean repetido = false;
+			int numero = 0;
+			for(int j = 0; j<grupos.length; j++) {
+				int otro = grupos[j];
+				if(grupoAsignatura[otro]==grupoAsignatura[g] && grupoTipo[otro]==grupoTipo[g]) {
+					if(j<i) repetido = true;
+					numero++;
+				}
+			}
+			if(repetido) continue;
+
+			if(!primero) sb.append("*\n");
+			primero = false;
+			sb.append(dni(alumnos + p)).append('\n').append(siglasAsignatura(grupoAsignatura[g])).append('\n')
+				.append(grupoTipo[g]).append('\n').append(numero + rnd.nextInt(2)).append('\n');
+		}
+		if(primero) {
+			// Profesor sin docencia: POD de una asignatura cualquiera
+			sb.append(dni(alumnos + p)).append('\n').append(siglasAsignatura(p%asignaturas)).append('\n').append("A\n1\n");
+		}
+	}
+
+	private void alumno(int i, StringBuilder sb) {
+		DatosAlumno datos = new DatosAlumno(i);
+		SplittableRandom rnd = aleatorio(5, i);
+		sb.append(dni(i)).append('\n');
+		nombre(rnd, sb).append('\n');
+		if(rnd.nextInt(4)!=0) sb.append("alumno").append(i).append('@').append(DOMINIOS[rnd.nextInt(DOMINIOS.length)]);
+		sb.append('\n');
+		fecha(1 + rnd.nextInt(28), 1 + rnd.nextInt(12), datos.anioIngreso - 18 - rnd.nextInt(3), sb).append('\n');
+		fecha(1, 9, datos.anioIngreso, sb).append('\n');
+
+		// Asignaturas superadas: siglas, curso académico y nota
+		for(int j = 0; j<datos.superadas.size(); j++) {
+			if(j>0) sb.append("; ");
+			int anio = datos.anioIngreso%100 + datos.cursoSuperada.get(j) - 1;
+			sb.append(siglasAsignatura(datos.superadas.get(j))).append(' ').append(anio).append('/').append(anio + 1)
+				.append(' ').append(datos.notas.get(j));
+		}
+		sb.append('\n');
+
+		// Docencia recibida: siglas y, si lo tiene, tipo y número de grupo
+		for(int j = 0; j<datos.matriculadas.size(); j++) {
+			if(j>0) sb.append("; ");
+			int s = datos.matriculadas.get(j);
+			sb.append(siglasAsignatura(s));
+			int grupo = datos.grupoA.get(j);
+			if(grupo>0) sb.append(" A ").append(grupo);
+			if(grupo>0 && gruposB[s]>0) sb.append("; ").append(siglasAsignatura(s)).append(" B ").append(1 + (i + j)%gruposB[s]);
+		}
+		sb.append('\n');
+	}
+
+	/**
+	 * Línea de un fichero de notas: los alumnos matriculados en la asignatura, con alguna nota incorrecta,
+	 * algún alumno que falta en el fichero B y algún DNI inexistente en el fichero A.
+	 */
+	private void nota(int i, int asignatura, char tipo, StringBuilder sb) {
+		SplittableRandom rnd = aleatorio(tipo=='A' ? 6 : 7, i);
+		if(tipo=='A' && rnd.nextInt(200)==0) sb.append(dni(alumnos + profesores + instrucciones + i)).append("  3.5\n");
+		if(!new DatosAlumno(i).matriculadas.contains(asignatura)) return;
+		if(tipo=='B' && rnd.nextInt(100)==0) return;
+		int decimas = rnd.nextInt(100)==0 ? 51 + rnd.nextInt(50) : rnd.nextInt(51);
+		sb.append(dni(i)).append("  ").append(decimas/10).append('.').append(decimas%10).append('\n');
+	}
+
+	/**
+	 * Línea de ejecucion.txt. Las últimas evalúan las asignaturas con fichero de notas.
+	 */
+	private void instruccion(int n, StringBuilder sb) {
+		sb.append(n + 1).append(' ');
+		if(n>=instrucciones) {
+			int evaluada = asignaturasCurso[n - instrucciones + 1][0];
+			sb.append("Evalua ").append(siglasAsignatura(evaluada)).append(' ')
+				.append(new File(directorio, ficheroNotas(evaluada, 'A')).getPath()).append(' ')
+				.append(new File(directorio, ficheroNotas(evaluada, 'B')).getPath()).append('\n');
+			return;
+		}
+
+		SplittableRandom rnd = aleatorio(8, n);
+		int tipo = rnd.nextInt(100);
+		int alumno = rnd.nextInt(alumnos);
+		int asignatura = rnd.nextInt(asignaturas);
+		if(tipo<25) {
+			// Matrícula: correcta o no según los prerrequisitos del alumno; alguna de asignatura inexistente
+			String siglas = rnd.nextInt(20)==0 ? "XX" + asignatura : siglasAsignatura(asignatura);
+			sb.append("Matricula ").append(dni(alumno)).append(' ').append(siglas);
+		}else if(tipo<45) {
+			// Grupo para un alumno, normalmente de una asignatura en la que está matriculado
+			DatosAlumno datos = new DatosAlumno(alumno);
+			if(!datos.matriculadas.isEmpty() && rnd.nextInt(5)!=0) asignatura = datos.matriculadas.get(rnd.nextInt(datos.matriculadas.size()));
+			grupo(sb.append("AsignaGrupo alumno ").append(dni(alumno)).append(' '), asignatura, rnd);
+		}else if(tipo<55) {
+			// Grupo para un profesor, normalmente de una asignatura que imparte
+			int profesor = rnd.nextInt(profesores);
+			if(gruposProfesor[profesor].length>0 && rnd.nextInt(5)!=0) {
+				asignatura = grupoAsignatura[gruposProfesor[profesor][rnd.nextInt(gruposProfesor[profesor].length)]];
+			}
+			grupo(sb.append("AsignaGrupo profesor ").append(dni(alumnos + profesor)).append(' '), asignatura, rnd);
+		}else if(tipo<65) {
+			// Alta de un alumno nuevo: algunos con DNI, fecha o fecha de ingreso incorrectos, o ya existentes
+			int error = rnd.nextInt(10);
+			String dni = error==0 ? dni(alumno) : dni(alumnos + profesores + n);
+			if(error==1) dni = dni.substring(1);
+			sb.append("InsertaPersona alumno ").append(dni).append(" \"");
+			nombre(rnd, sb).append("\" ");
+			fecha(error==2 ? 31 : 10, error==2 ? 6 : 7, 1998, sb).append(' ');
+			fecha(1, 9, error==3 ? 2008 : 2016, sb);
+		}else if(tipo<70) {
+			// Alta de un profesor nuevo
+			int error = rnd.nextInt(10);
+			String dni = error==0 ? dni(alumnos + rnd.nextInt(profesores)) : dni(alumnos + profesores + n);
+			sb.append("InsertaPersona profesor ").append(dni).append(" \"");
+			nombre(rnd, sb).append("\" ");
+			fecha(5, 6, error==1 ? 1950 : 1977, sb).append(rnd.nextBoolean() ? " titular " : " asociado ")
+				.append(DEPARTAMENTOS_SIGLAS[rnd.nextInt(DEPARTAMENTOS_SIGLAS.length)]);
+		}else if(tipo<85) {
+			// Grupo nuevo: en un aula cualquiera (puede estar ocupada o ser de otro tipo), alguno ya existente
+			char tipoGrupo = rnd.nextBoolean() ? 'A' : 'B';
+			int id = (tipoGrupo=='A' ? gruposA[asignatura] : gruposB[asignatura]) + (rnd.nextInt(10)==0 ? 0 : 1 + rnd.nextInt(3));
+			sb.append("CreaGrupoAsig ").append(siglasAsignatura(asignatura)).append(' ').append(tipoGrupo).append(' ').append(id)
+				.append(' ').append(DIAS.charAt(rnd.nextInt(DIAS.length()))).append(' ').append(HORAS_INICIO[rnd.nextInt(HORAS_INICIO.length)])
+				.append(' ').append(siglasAula(rnd.nextInt(aulas)));
+		}else if(tipo<90) {
+			sb.append("Expediente ").append(rnd.nextInt(20)==0 ? "00000000X" : dni(alumno)).append(" expediente.txt");
+		}else if(tipo<93) {
+			sb.append("OcupacionAula ").append(siglasAula(rnd.nextInt(aulas)));
+		}else {
+			// Comando inexistente
+			sb.append("Matricular ").append(dni(alumno)).append(' ').append(siglasAsignatura(asignatura));
+		}
+		sb.append('\n');
+	}
+
+	private void grupo(StringBuilder sb, int asignatura, SplittableRandom rnd) {
+		char tipo = rnd.nextInt(3)==0 ? 'B' : 'A';
+		int numero = tipo=='A' ? gruposA[asignatura] : gruposB[asignatura];
+		sb.append(siglasAsignatura(asignatura)).append(' ').append(tipo).append(' ').append(1 + rnd.nextInt(numero + 1));
+	}
+
+	/**
+	 * Datos académicos de un alumno, calculados siempre igual a partir de su posición.
+	 * El alumno cursa un curso de 1 a 4; tiene superadas la mayoría de troncales y alguna otra asignatura de cada curso anterior,
+	 * y está matriculado en algunas asignaturas de su curso, con o sin grupo.
+	 */
+	private final class DatosAlumno {
+		final int anioIngreso;
+		final List<Integer> superadas = new ArrayList<Integer>();
+		final List<Integer> cursoSuperada = new ArrayList<Integer>();
+		final List<String> notas = new ArrayList<String>();
+		final List<Integer> matriculadas = new ArrayList<Integer>();
+		final List<Integer> grupoA = new ArrayList<Integer>(); // grupo A de cada matriculada, 0 si no tiene
+
+		DatosAlumno(int i) {
+			SplittableRandom rnd = aleatorio(4, i);
+			int curso = 1 + i%CURSOS;
+			anioIngreso = 2000 + CURSO_ACTUAL - curso + 1;
+
+			for(int anterior = 1; anterior<curso; anterior++) {
+				int[] delCurso = asignaturasCurso[anterior];
+				for(int j = 0; j<delCurso.length && j<TRONCALES + 3; j++) {
+					int s = j<TRONCALES ? delCurso[j] : delCurso[rnd.nextInt(delCurso.length)];
+					if(superadas.contains(s) || rnd.nextInt(5)==0) continue;
+					superadas.add(s);
+					cursoSuperada.add(anterior);
+					int nota = 50 + rnd.nextInt(51);
+					notas.add(nota/10 + "." + nota%10);
+				}
+			}
+
+			int[] delCurso = asignaturasCurso[curso];
+			for(int j = 0; j<delCurso.length && j<TRONCALES + 3; j++) {
+				int s = j<TRONCALES ? delCurso[j] : delCurso[rnd.nextInt(delCurso.length)];
+				if(matriculadas.contains(s) || rnd.nextBoolean()) continue;
+				matriculadas.add(s);
+				grupoA.add(rnd.nextInt(10)<7 ? 1 + rnd.nextInt(gruposA[s]) : 0);
+			}
+		}
+	}
+
+	// ESCRITURA EN PARALELO:
+
+	/**
+	 * Genera el contenido de un elemento del fichero.
+	 */
+	private interface Elemento {
+		void generar(int posicion, StringBuilder sb);
+	}
+
+	/**
+	 * Escribe un fichero con los elementos indicados, generados en paralelo por bloques y escritos en orden.
+	 * Como mucho hay 2 bloques por hilo pendientes de escribir, para acotar la memoria usada.
+	 * @param nombre Nombre del fichero dentro del directorio de salida
+	 * @param total Número de elementos
+	 * @param separar Si los elementos se separan con una línea con *
+	 * @param elemento Generador de cada elemento
+	 */
+	private void escribirFichero(String nombre, int total, boolean separar, Elemento elemento) throws IOException {
+		ArrayDeque<Future<StringBuilder>> pendientes = new ArrayDeque<Future<StringBuilder>>();
+		Writer salida = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(directorio, nombre)),
+				StandardCharsets.US_ASCII), TAMANO_BUFFER_SALIDA);
+		try {
+			for(int inicio = 0; inicio<total || !pendientes.isEmpty(); ) {
+				// Encola bloques hasta llenar la ventana
+				while(inicio<total && pendientes.size()<2*hilos) {
+					int desde = inicio, hasta = (int) Math.min(total, (long) inicio + ELEMENTOS_POR_BLOQUE);
+					pendientes.add(pool.submit(() -> {
+						StringBuilder sb = new StringBuilder(256*(hasta - desde));
+						for(int i = desde; i<hasta; i++) {
+							if(separar && i>0) sb.append("*\n");
+							elemento.generar(i, sb);
+						}
+						return sb;
+					}));
+					inicio = hasta;
+				}
+
+				// Escribe el bloque más antiguo
+				salida.append(pendientes.poll().get());
+			}
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Generación interrumpida", e);
+		}catch(ExecutionException e) {
+			throw new IOException("Error al generar el fichero " + nombre, e.getCause());
+		}finally {
+			for(Future<StringBuilder> pendiente: pendientes) pendiente.cancel(true);
+			salida.close();
+		}
+	}
+
+	// AUXILIARES:
+
+	/**
+	 * Generador aleatorio propio de cada elemento: depende solo de la semilla, del tipo de elemento y de su posición.
+	 */
+	private SplittableRandom aleatorio(int tipo, long posicion) {
+		return new SplittableRandom(semilla*0x9E3779B97F4A7C15L + tipo*0xBF58476D1CE4E5B9L + posicion);
+	}
+
+	/**
+	 * DNI con letra de control correcta. Posiciones distintas (menores de 10^8) dan DNI distintos,
+	 * ya que 7919 es primo con 10^8.
+	 */
+	private static String dni(long posicion) {
+		long numero = (posicion*7919 + 10_000_000) % 100_000_000;
+		return String.format("%08d%c", numero, LETRAS_DNI.charAt((int) (numero%23)));
+	}
+
+	private static String siglasAsignatura(int s) {
+		return "AS" + s;
+	}
+
+	private static String siglasAula(int a) {
+		return (a%2==0 ? "T" : "L") + a;
+	}
+
+	private static String ficheroNotas(int asignatura, char tipo) {
+		return "Notas_" + tipo + "_" + siglasAsignatura(asignatura) + ".txt";
+	}
+
+	private static StringBuilder nombre(SplittableRandom rnd, StringBuilder sb) {
+		return sb.append(APELLIDOS[rnd.nextInt(APELLIDOS.length)]).append(' ').append(APELLIDOS[rnd.nextInt(APELLIDOS.length)])
+			.append(", ").append(NOMBRES[rnd.nextInt(NOMBRES.length)]);
+	}
+
+	private static StringBuilder fecha(int dia, int mes, int anio, StringBuilder sb) {
+		return sb.append(dia).append('/').append(mes).append('/').append(anio);
+	}
+
+}
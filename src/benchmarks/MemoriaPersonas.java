@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import modelos.Alumno;
+import modelos.Persona;
+import modelos.Profesor;
+
+/**
+ * Mide la memoria que ocupan en el heap un gran número de personas (por defecto 1.000.000 alumnos y 1.000.000 profesores).
+ * Uso: java -cp bin benchmarks.MemoriaPersonas [número de personas]
+ * Conviene ejecutarlo con un heap fijo (p.ej. -Xms4g -Xmx4g) para que las medidas sean estables.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class MemoriaPersonas {
+
+	public static void main(String[] args) {
+		int numero = args.length>0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+		long base = heapUsado();
+		Persona[] alumnos = new Persona[numero];
+		for(int i = 0; i<numero; i++) {
+			alumnos[i] = new Alumno(dni(i), "Apellido Apellido, Nombre", null, (1 + i%28) + "/" + (1 + i%12) + "/1997",
+					(1 + i%28) + "/9/2016", null, null);
+		}
+		long conAlumnos = heapUsado();
+
+		Persona[] profesores = new Persona[numero];
+		for(int i = 0; i<numero; i++) {
+			profesores[i] = new Profesor(dni(i), "Apellido Apellido, Nombre", (1 + i%28) + "/" + (1 + i%12) + "/1970",
+					"titular", "Departamento", null);
+		}
+		long conProfesores = heapUsado();
+
+		System.out.printf("Alumnos:    %,d bytes (%d bytes/alumno)%n", conAlumnos - base, (conAlumnos - base)/numero);
+		System.out.printf("Profesores: %,d bytes (%d bytes/profesor)%n", conProfesores - conAlumnos, (conProfesores - conAlumnos)/numero);
+
+		// Mantiene vivos los objetos hasta el final de la medida
+		if(alumnos[numero-1].getDni().isEmpty() || profesores[numero-1].getDni().isEmpty()) System.out.println();
+	}
+
+	private static String dni(int i) {
+		return String.format("%08dA", i);
+	}
+
+	private static long heapUsado() {
+		MemoryMXBean memoria = ManagementFactory.getMemoryMXBean();
+		for(int i = 0; i<3; i++) System.gc();
+		return memoria.getHeapMemoryUsage().getUsed();
+	}
+
+}
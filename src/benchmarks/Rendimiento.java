@@ -0,0 +1,249 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import docencia.Arranque;
+import docencia.Comandos;
+import modelos.Alumno;
+import modelos.Aula;
+import modelos.CalendarioOcupacion;
+import modelos.EscribibleEnFichero;
+import modelos.Persona;
+import modelos.Profesor;
+
+/**
+ * Mide el rendimiento de los caminos críticos del programa: la carga de la base de datos, cada uno de los comandos,
+ * los calendarios de ocupación, la escritura de los ficheros y los validadores de {@link Persona}.
+ * Para cada medida muestra el rendimiento (operaciones por segundo y tiempo por operación)
+ * y la memoria reservada por operación, medida con el ThreadMXBean de la JVM.
+ *
+ * Uso: java [-Dcentros.datos=directorio] -cp bin benchmarks.Rendimiento [carga|comandos|ocupacion|persistencia|validadores ...]
+ * Sin argumentos se ejecutan todas las medidas. Se usa el conjunto de datos del directorio indicado (por defecto ficheros/),
+ * por lo que para comparar varios tamaños se ejecuta una vez por cada directorio.
+ * Los comandos escriben sus ficheros (alumnos.txt, avisos.txt...) en el directorio actual: conviene ejecutarlo en un directorio de pruebas.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class Rendimiento {
+
+	private static final int CALENTAMIENTO = Integer.getInteger("centros.benchmark.calentamiento", 3);
+	private static final int ITERACIONES = Integer.getInteger("centros.benchmark.iteraciones", 5);
+
+	private static final com.sun.management.ThreadMXBean HILOS = hilos();
+	
+	// Los resultados se escriben siempre en la salida original, aunque se redirija System.out durante las medidas
+	private static final PrintStream INFORME = System.out;
+
+	public static void main(String[] args) throws IOException {
+		List<String> medidas = Arrays.asList(args.length>0 ? args : new String[] {"carga", "comandos", "ocupacion", "persistencia", "validadores"});
+		INFORME.println("Datos: " + Arranque.DIRECTORIO_DATOS);
+		INFORME.printf("%-32s %14s %14s %14s%n", "Medida", "ops/s", "ns/op", "bytes/op");
+
+		Arranque.cargarBaseDeDatos();
+		if(medidas.contains("carga")) medirCarga();
+		if(medidas.contains("comandos")) medirComandos();
+		if(medidas.contains("ocupacion")) medirOcupacion();
+		if(medidas.contains("persistencia")) medirPersistencia();
+		if(medidas.contains("validadores")) medirValidadores();
+	}
+
+	/**
+	 * Carga completa de la base de datos (Arranque.cargarMapas).
+	 */
+	private static void medirCarga() {
+		medir("carga", null, () -> {
+			Arranque.cargarBaseDeDatos();
+			return 1;
+		});
+	}
+
+	/**
+	 * Cada comando del fichero ejecucion.txt por separado. En cada iteración se vuelve a cargar la base de datos
+	 * (fuera de la medida), para que todas ejecuten las mismas instrucciones sobre los mismos datos.
+	 */
+	private static void medirComandos() throws IOException {
+		LinkedHashMap<String, List<String[]>> porComando = new LinkedHashMap<String, List<String[]>>();
+		List<String> lineas = Files.readAllLines(Paths.get(Arranque.FICHERO_INSTRUCCIONES), Charset.defaultCharset());
+		for(String linea: lineas) {
+			linea = linea.trim();
+			if(linea.isEmpty() || linea.startsWith("*")) continue;
+			List<String> params = Comandos.separarParametros(linea);
+			params.remove(0); // número de línea
+			if(params.isEmpty()) continue;
+			porComando.computeIfAbsent(params.get(0).toLowerCase(), c -> new ArrayList<String[]>()).add(params.toArray(new String[0]));
+		}
+
+		PrintStream salida = System.out;
+		for(String comando: porComando.keySet()) {
+			List<String[]> instrucciones = porComando.get(comando);
+			System.setOut(new PrintStream(NULA)); // la salida por pantalla de los comandos no se mide
+			try {
+				medir("comando " + comando, Arranque::cargarBaseDeDatos, () -> {
+					for(String[] parametros: instrucciones) Comandos.ejecutaComando(String.join(" ", parametros), parametros);
+					return instrucciones.size();
+				});
+			}finally {
+				System.setOut(salida);
+			}
+		}
+	}
+
+	/**
+	 * Calendarios de ocupación: de todas las aulas a la vez y de cada aula con Aula.obtenerCalendarioOcupacion.
+	 */
+	private static void medirOcupacion() {
+		PrintStream salida = System.out;
+		System.setOut(new PrintStream(NULA));
+		try {
+			medir("ocupacion todas las aulas", null, () -> {
+				StringBuilder sb = new StringBuilder();
+				CalendarioOcupacion.escribir(CalendarioOcupacion.generar(Arranque.aulas.values()).values(),
+						CalendarioOcupacion.Formato.TEXTO, true, sb);
+				return Arranque.aulas.size();
+			});
+			medir("ocupacion aula a aula", null, () -> {
+				for(Aula aula: Arranque.aulas.values()) aula.obtenerCalendarioOcupacion();
+				return Arranque.aulas.size();
+			});
+		}finally {
+			System.setOut(salida);
+		}
+	}
+
+	/**
+	 * Escritura de los ficheros de alumnos y profesores (Arranque.sobreescribirFichero).
+	 */
+	private static void medirPersistencia() {
+		medir("sobreescribir alumnos", null, () -> {
+			Arranque.sobreescribirFichero(new LinkedHashMap<String, EscribibleEnFichero>(Arranque.alumnos));
+			return Arranque.alumnos.size();
+		});
+		medir("sobreescribir profesores", null, () -> {
+			Arranque.sobreescribirFichero(new LinkedHashMap<String, EscribibleEnFichero>(Arranque.profesores));
+			return Arranque.profesores.size();
+		});
+	}
+
+	/**
+	 * Validadores de DNI y fechas de Persona, sobre los datos de todos los alumnos y profesores.
+	 */
+	private static void medirValidadores() {
+		List<String> dnis = new ArrayList<String>();
+		List<String[]> fechas = new ArrayList<String[]>();
+		for(Alumno alumno: Arranque.alumnos.values()) {
+			dnis.add(alumno.getDni());
+			fechas.add(new String[] {alumno.getFechaNacimientoFormateada(), alumno.getFechaIngresoFormateada()});
+		}
+		for(Profesor profesor: Arranque.profesores.values()) dnis.add(profesor.getDni());
+		if(dnis.isEmpty()) return;
+
+		medir("comprobarDNI", null, () -> {
+			int validos = 0;
+			for(String dni: dnis) if(Persona.comprobarDNI(dni)) validos++;
+			consumir(validos);
+			return dnis.size();
+		});
+		if(fechas.isEmpty()) return;
+		medir("comprobarFechaNacimiento", null, () -> {
+			int validas = 0;
+			for(String[] fecha: fechas) if(Persona.comprobarFechaNacimiento(fecha[0])) validas++;
+			consumir(validas);
+			return fechas.size();
+		});
+		medir("comprobarFechaIngreso", null, () -> {
+			int validas = 0;
+			for(String[] fecha: fechas) if(Persona.comprobarFechaIngreso(fecha[0], fecha[1])) validas++;
+			consumir(validas);
+			return fechas.size();
+		});
+	}
+
+	// MEDIDA:
+
+	/**
+	 * Operación a medir.
+	 */
+	private interface Operacion {
+		/**
+		 * Ejecuta la operación.
+		 * @return Número de operaciones elementales realizadas (p.ej. número de comandos ejecutados)
+		 */
+		int ejecutar() throws Exception;
+	}
+
+	/**
+	 * Ejecuta una operación varias veces para calentar la JVM y después la mide, mostrando la media de las iteraciones medidas.
+	 * @param nombre Nombre de la medida
+	 * @param preparacion Tarea que se ejecuta antes de cada iteración, fuera de la medida (puede ser null)
+	 * @param operacion Operación a medir
+	 */
+	private static void medir(String nombre, Runnable preparacion, Operacion operacion) {
+		long tiempo = 0, bytes = 0, operaciones = 0;
+		try {
+			for(int i = 0; i<CALENTAMIENTO + ITERACIONES; i++) {
+				if(preparacion!=null) preparacion.run();
+				long bytesInicio = bytesReservados();
+				long inicio = System.nanoTime();
+				int realizadas = operacion.ejecutar();
+				long fin = System.nanoTime();
+				long bytesFin = bytesReservados();
+				if(i<CALENTAMIENTO) continue;
+
+				tiempo += fin - inicio;
+				bytes += bytesFin - bytesInicio;
+				operaciones += realizadas;
+			}
+		}catch(Exception e) {
+			INFORME.printf("%-32s error: %s%n", nombre, e);
+			return;
+		}
+		if(operaciones==0) return;
+
+		INFORME.printf("%-32s %,14.1f %,14.1f %,14d%n", nombre, operaciones*1e9/tiempo, (double) tiempo/operaciones,
+				HILOS!=null ? bytes/operaciones : -1);
+	}
+
+	private static long bytesReservados() {
+		return HILOS!=null ? HILOS.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+	}
+
+	private static com.sun.management.ThreadMXBean hilos() {
+		// La memoria reservada por hilo solo está disponible en las JVM de HotSpot/OpenJDK
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+		com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) bean;
+		if(!hilos.isThreadAllocatedMemorySupported()) return null;
+		hilos.setThreadAllocatedMemoryEnabled(true);
+		return hilos;
+	}
+
+	// Evita que el compilador JIT elimine los resultados que no se usan
+	private static volatile int sumidero;
+
+	private static void consumir(int valor) {
+		sumidero += valor;
+	}
+
+	private static final OutputStream NULA = new OutputStream() {
+		@Override
+		public void write(int b) {
+
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+
+		}
+	};
+
+}
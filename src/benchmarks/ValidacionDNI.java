@@ -0,0 +1,56 @@
+package benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import modelos.ValidadorDNI;
+
+/**
+ * Compara la validación de DNI de uno en uno (String) con la validación por lotes sobre un buffer de bytes de {@link ValidadorDNI}.
+ * Uso: java -cp bin benchmarks.ValidacionDNI [número de DNI]
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class ValidacionDNI {
+
+	private static final String LETRAS = "TRWAGMYFPDXBNJZSQVHLCKE";
+	private static final int REPETICIONES = 10;
+
+	public static void main(String[] args) {
+		int numero = args.length>0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+		// Mezcla de DNI correctos, con letra de control incorrecta y con formato incorrecto
+		Random random = new Random(42);
+		String[] dnis = new String[numero];
+		byte[] registros = new byte[numero*ValidadorDNI.LONGITUD];
+		for(int i = 0; i<numero; i++) {
+			int n = random.nextInt(100_000_000);
+			char letra = random.nextInt(4)==0 ? (char) ('A' + random.nextInt(26)) : LETRAS.charAt(n%23);
+			String dni = String.format("%08d%c", n, letra);
+			if(random.nextInt(20)==0) dni = dni.replace(dni.charAt(3), 'x');
+			dnis[i] = dni;
+			System.arraycopy(dni.getBytes(StandardCharsets.US_ASCII), 0, registros, i*ValidadorDNI.LONGITUD, ValidadorDNI.LONGITUD);
+		}
+		long[] validos = new long[(numero + 63)/64];
+
+		for(int vuelta = 0; vuelta<REPETICIONES; vuelta++) {
+			// Uno a uno
+			long inicio = System.nanoTime();
+			int correctosString = 0;
+			for(String dni: dnis) {
+				if(ValidadorDNI.comprobarFormato(dni) && ValidadorDNI.comprobarLetra(dni)) correctosString++;
+			}
+			long tiempoString = System.nanoTime() - inicio;
+
+			// Por lotes
+			inicio = System.nanoTime();
+			int correctosLote = ValidadorDNI.validar(registros, 0, numero, true, validos);
+			long tiempoLote = System.nanoTime() - inicio;
+
+			if(correctosString!=correctosLote) throw new IllegalStateException(correctosString + " != " + correctosLote);
+			System.out.printf("Vuelta %d: String %.2f ns/DNI, lote %.2f ns/DNI (%d válidos)%n", vuelta,
+					(double) tiempoString/numero, (double) tiempoLote/numero, correctosLote);
+		}
+	}
+
+}
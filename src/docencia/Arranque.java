@@ -2,16 +2,17 @@ package docencia;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 import modelos.*;
 
@@ -29,47 +30,77 @@ public class Arranque {
 	 * Mapa con los alumnos registrados en la base de datos.
 	 * La clave es el DNI del alumno y el valor un objeto de tipo {@link modelos.Alumno}.
 	 */
-	public static LinkedHashMap<String, Alumno> alumnos = new LinkedHashMap<String, Alumno>();
+	public static volatile LinkedHashMap<String, Alumno> alumnos = new LinkedHashMap<String, Alumno>();
 	
 	/**
 	 * Mapa con los profesores registrados en la base de datos.
 	 * La clave es el DNI del profesor y el valor un objeto de tipo {@link modelos.Profesor}.
 	 */
-	public static LinkedHashMap<String, Profesor> profesores = new LinkedHashMap<String, Profesor>();
+	public static volatile LinkedHashMap<String, Profesor> profesores = new LinkedHashMap<String, Profesor>();
 	
 	/**
 	 * Mapa con las aulas registradas en la base de datos.
 	 * La clave es las siglas del aula y el valor un objeto de tipo {@link modelos.Aula}.
 	 */
-	public static LinkedHashMap<String, Aula> aulas = new LinkedHashMap<String, Aula>();
+	public static volatile LinkedHashMap<String, Aula> aulas = new LinkedHashMap<String, Aula>();
 	
 	/**
 	 * Mapa con las planificaciones docentes registradas en la base de datos.
 	 * La clave es la concatenación del DNI del profesor, la asignatura y el tipo de grupo.
 	 * El valor es un objeto de tipo {@link modelos.Pod}.
 	 */
-	public static LinkedHashMap<String, Pod> pod = new LinkedHashMap<String, Pod>();
+	public static volatile LinkedHashMap<String, Pod> pod = new LinkedHashMap<String, Pod>();
+	
+	/**
+	 * Índice de las planificaciones docentes con clave numérica (DNI, asignatura y tipo de grupo empaquetados en un long),
+	 * con las mismas entradas que el mapa {@link #pod}. Se usa para las comprobaciones de "AsignaGrupo".
+	 */
+	public static volatile IndicePod indicePod = new IndicePod(16);
 	
 	/**
 	 * Mapa con las asignaturas registradas en la base de datos.
 	 * La clave es las siglas de la asignatura y el valor un objeto de tipo {@link modelos.Asignatura}.
 	 */
-	public static LinkedHashMap<String, Asignatura> asignaturas = new LinkedHashMap<String, Asignatura>();
+	public static volatile LinkedHashMap<String, Asignatura> asignaturas = new LinkedHashMap<String, Asignatura>();
 	
 	// Parámetros del curso (cursoAcademico.txt):
 	
 	/**
 	 * Curso académico actual, en formato String. P.ej.: 17/18
 	 */
-	public static String cursoAcademico;
+	public static volatile String cursoAcademico;
 	
 	/**
 	 * Semana del año en la que comienza el curso académico. P.ej.: 35
 	 */
-	public static int semanaInicioCurso;
+	public static volatile int semanaInicioCurso;
 	
 	private static ArrayList<String> instrucciones;
-	private static final String FICHERO_INSTRUCCIONES	 = "ficheros/ejecucion.txt";
+	
+	/**
+	 * Directorio con los ficheros de la base de datos y el fichero ejecucion.txt.
+	 * Por defecto es "ficheros/", pero se puede cambiar arrancando el programa con -Dcentros.datos=directorio
+	 * (p.ej. para medir el rendimiento con un conjunto de datos más grande, generado con {@link benchmarks.GeneradorDatos}).
+	 */
+	public static final String DIRECTORIO_DATOS = directorioDatos();
+	
+	/**
+	 * Fichero con las instrucciones a ejecutar.
+	 */
+	public static final String FICHERO_INSTRUCCIONES = DIRECTORIO_DATOS + "ejecucion.txt";
+	
+	// Separador entre los elementos de los ficheros de la base de datos
+	private static final String SEPARADOR = "\n*\n";
+	
+	// Ficheros de la base de datos, en el orden en el que se cargan
+	private static final String[] FICHEROS_BASE_DE_DATOS = {"cursoAcademico.txt", "aulas.txt", "asignaturas.txt", "pod.txt",
+			"profesores.txt", "alumnos.txt"};
+	
+	// Modo simulación: no se escribe ningún fichero
+	private static volatile boolean simulacion;
+	
+	// Punto de control del lote en ejecución (null si no se guarda)
+	private static volatile PuntoControl puntoControl;
 	
 	// La clase no se puede instanciar:
 	private Arranque() {
@@ -80,44 +111,168 @@ public class Arranque {
 	 * Punto de comienzo del programa.
 	 * Lee los ficheros de la base de datos, carga su contenido en memoria 
 	 * y a partir de ahí ejecuta todas las instrucciones del fichero ejecucion.txt.
+	 * Si una ejecución anterior del mismo fichero se interrumpió, continúa tras la última línea aplicada (ver {@link PuntoControl}).
 	 * Se presupone que los ficheros de la base de datos están correctos.
 	 */
 	public static void inicio() {
+		Monitorizacion.registrar();
+		if(!simulacion) abrirPuntoControl();
+		cargarBaseDeDatos();
+		cargarInstrucciones();
+		
+	}
+	
+	/**
+	 * Modo simulación: ejecuta todas las instrucciones de ejecucion.txt igual que {@link #inicio()}, pero sin escribir
+	 * ningún fichero de la base de datos ni las salidas de los comandos (expedientes, calendarios de ocupación...).
+	 * Sirve para saber qué líneas de un lote grande van a fallar antes de ejecutarlo de verdad:
+	 * los avisos se escriben en el fichero indicado en lugar de en avisos.txt.
+	 *
+	 * No hace falta ninguna copia de los mapas: los ficheros solo se leen al arrancar y los comandos trabajan sobre
+	 * los mapas en memoria, que son privados de este proceso y se descartan al terminar. Cada comando ve los cambios
+	 * de los anteriores (p.ej. un alumno insertado en una línea se puede matricular en la siguiente), como en la ejecución real.
+	 * @param ficheroAvisos Fichero en el que se escriben los avisos
+	 */
+	public static void simulacion(String ficheroAvisos) {
+		simulacion = true;
+		try {
+			Errores.redirigir(ficheroAvisos);
+		}catch(IOException e) {
+			System.out.println("Error al escribir en el fichero " + ficheroAvisos + ". Se aborta la simulación.");
+			return;
+		}
+		inicio();
+		System.out.println("Simulación terminada. Avisos en " + ficheroAvisos);
+	}
+	
+	/**
+	 * Indica si se está ejecutando en modo simulación (ver {@link #simulacion(String)}),
+	 * en el que no se escribe ningún fichero.
+	 */
+	public static boolean esSimulacion() {
+		return simulacion;
+	}
+	
+	/**
+	 * Lee los ficheros de la base de datos y carga su contenido en memoria, sin ejecutar ninguna instrucción.
+	 * Si hay algún error, se termina la ejecución del programa.
+	 */
+	public static void cargarBaseDeDatos() {
 		try {
+			long inicio = System.nanoTime();
 			cargarMapas();
+			Metricas.carga(System.nanoTime() - inicio);
 			
 		}catch(Exception e) {
 			System.out.println("Error inesperado al cargar los ficheros. Se termina la ejecución del programa");
 			e.printStackTrace(System.out);
-			System.exit(1);
+			salir(1);
 		}
-
-		cargarInstrucciones();
-		
 	}
 	
 	/**
 	 * Lee los archivos de la base de datos y carga su contenido en los mapas estáticos de la clase Arranque.
 	 * Se lee archivo a archivo, siguiendo un orden lógico, y utilizando los métodos {@link #leerArray(String)} y {@link #leerSimple(String)}.
+	 * Cada fichero se carga con su propio método, que también se usa para recargarlo (ver {@link #recargarFichero(String)}).
 	 * @throws IOException En caso de error leyendo alguno de los archivos (no debería de pasar en este proyecto).
 	 */
 	private static void cargarMapas() throws IOException{
-
-		// 1) Curso académico: cursoAcademico.txt
-		ArrayList<String> listaCursoAcademico = leerSimple("ficheros/cursoAcademico.txt");
-		cursoAcademico = listaCursoAcademico.get(0);
-		semanaInicioCurso = Integer.parseInt(listaCursoAcademico.get(1));
+		for(String fichero: FICHEROS_BASE_DE_DATOS) cargarFichero(fichero);
+	}
+	
+	/**
+	 * Vuelve a leer un fichero de la base de datos que ha cambiado, sustituyendo de una vez el mapa correspondiente
+	 * y reconstruyendo solo lo que depende de él: el índice del POD si cambia pod.txt,
+	 * y los expedientes ya generados si cambia asignaturas.txt (dependen del curso de cada asignatura).
+	 * Si el fichero no se puede leer (p.ej. porque se está escribiendo en ese momento), se mantienen los datos anteriores.
+	 * @param fichero Nombre del fichero, sin directorio (p.ej.: aulas.txt)
+	 * @return true si se ha recargado, false si no es un fichero de la base de datos
+	 * @throws IOException En caso de error leyendo el fichero
+	 */
+	public static synchronized boolean recargarFichero(String fichero) throws IOException {
+		if(cargarFichero(fichero)<0) return false;
+		if(fichero.equals("asignaturas.txt")) {
+			for(Alumno alumno: alumnos.values()) alumno.invalidarExpediente();
+		}
+		return true;
+	}
+	
+	/**
+	 * Carga un fichero de la base de datos con su método correspondiente, registrando la carga como evento de JFR
+	 * (ver {@link Eventos}).
+	 * @param fichero Nombre del fichero, sin directorio
+	 * @return Número de registros cargados, o -1 si no es un fichero de la base de datos
+	 * @throws IOException En caso de error leyendo el fichero
+	 */
+	private static int cargarFichero(String fichero) throws IOException {
+		Eventos.Carga evento = new Eventos.Carga();
+		evento.begin();
+		int registros;
+		switch(fichero) {
+		case "cursoAcademico.txt":
+			cargarCursoAcademico();
+			registros = 1;
+			break;
+		case "aulas.txt":
+			cargarAulas();
+			registros = aulas.size();
+			break;
+		case "asignaturas.txt":
+			cargarAsignaturas();
+			registros = asignaturas.size();
+			break;
+		case "pod.txt":
+			cargarPod();
+			registros = pod.size();
+			break;
+		case "profesores.txt":
+			cargarProfesores();
+			registros = profesores.size();
+			break;
+		case "alumnos.txt":
+			cargarAlumnos();
+			registros = alumnos.size();
+			break;
+		default:
+			return -1;
+		}
 		
+		evento.end();
+		if(evento.shouldCommit()) {
+			evento.fichero = fichero;
+			evento.registros = registros;
+			evento.bytes = new File(ruta(fichero)).length();
+			evento.commit();
+		}
+		return registros;
+	}
+	
+	/**
+	 * Lee el curso académico y la semana de inicio del curso: cursoAcademico.txt
+	 * @throws IOException En caso de error leyendo el fichero
+	 */
+	private static void cargarCursoAcademico() throws IOException {
+		ArrayList<String> listaCursoAcademico = leerSimple(ruta("cursoAcademico.txt"));
+		int semana = Integer.parseInt(listaCursoAcademico.get(1));
+		cursoAcademico = listaCursoAcademico.get(0);
+		semanaInicioCurso = semana;
+	}
 
+	/**
+	 * Lee las aulas: aulas.txt
+	 * @throws IOException En caso de error leyendo el fichero
+	 */
+	private static void cargarAulas() throws IOException {
 		/*
-		 * 2) Aulas: aulas.txt
+		 * Aulas: aulas.txt
 		 * Líneas:
 		 * 	(0) siglas --> String
 		 * 	(1) tipo grupo --> char
 		 * 	(2) capacidad --> int
 		 * Clave: siglas
 		 */
-		ArrayList<ArrayList<String>> listaAulas = leerArray("ficheros/aulas.txt");
+		LinkedHashMap<String, Aula> mapa = new LinkedHashMap<String, Aula>();
+		ArrayList<ArrayList<String>> listaAulas = leerArray(ruta("aulas.txt"));
 		for (int i = 0; i < listaAulas.size(); i++) {
 			// Recorre el arraylist aula a aula
 			ArrayList<String> aulaActual = listaAulas.get(i);
@@ -125,12 +280,18 @@ public class Arranque {
 			char tipoGrupo = aulaActual.get(1).charAt(0);
 			int capacidad = Integer.parseInt(aulaActual.get(2));
 			Aula aula = new Aula(clave, tipoGrupo, capacidad);
-			aulas.put(clave, aula); // mete el aula en el mapa correspondiente
+			mapa.put(clave, aula); // mete el aula en el mapa correspondiente
 		}
-		
+		aulas = mapa;
+	}
 
+	/**
+	 * Lee las asignaturas: asignaturas.txt
+	 * @throws IOException En caso de error leyendo el fichero
+	 */
+	private static void cargarAsignaturas() throws IOException {
 		/*
-		 * 3) Asignaturas: asignaturas.txt
+		 * Asignaturas: asignaturas.txt
 		 * Líneas:
 		 * 	(0) siglas --> String
 		 * 	(1) nombre --> String
@@ -144,7 +305,9 @@ public class Arranque {
 		 * 	(9) Grupos B --> String (lista de grupos separados por ';') --! puede ser null (no hay grupos B)
 		 * Clave: siglas
 		 */
-		ArrayList<ArrayList<String>> listaAsignaturas = leerArray("ficheros/asignaturas.txt");
+		LinkedHashMap<String, Asignatura> mapa = new LinkedHashMap<String, Asignatura>();
+		long grupos = 0;
+		ArrayList<ArrayList<String>> listaAsignaturas = leerArray(ruta("asignaturas.txt"));
 		for (int i = 0; i < listaAsignaturas.size(); i++) {
 			// Recorre el arraylist asignatura a asignatura
 			ArrayList<String> asignaturaActual = listaAsignaturas.get(i);
@@ -161,12 +324,20 @@ public class Arranque {
 			
 			Asignatura asignatura = new Asignatura(clave, nombre, curso, cuatrimestre, dniCoordinador,
 					prerrequisitos, duracionGrupoA, duracionGrupoB, listaGruposA, listaGruposB);
-			asignaturas.put(clave, asignatura);
+			grupos += asignatura.getGruposA().size() + asignatura.getGruposB().size();
+			mapa.put(clave, asignatura);
 		}
-		
+		asignaturas = mapa;
+		Monitorizacion.setGrupos(grupos);
+	}
 
+	/**
+	 * Lee la planificación docente: pod.txt. También construye su índice ({@link #indicePod}).
+	 * @throws IOException En caso de error leyendo el fichero
+	 */
+	private static void cargarPod() throws IOException {
 		/*
-		 * 4) POD: pod.txt -- alternativa 1
+		 * POD: pod.txt -- alternativa 1
 		 * Líneas:
 		 * 	(0) dni --> String
 		 * 	(1) asignatura --> String (siglas)
@@ -174,7 +345,8 @@ public class Arranque {
 		 *  (3) Número de grupos --> float
 		 * Clave: DNI+asignatura+tipoGrupo
 		 */
-		ArrayList<ArrayList<String>> listaPod = leerArray("ficheros/pod.txt");
+		LinkedHashMap<String, Pod> mapa = new LinkedHashMap<String, Pod>();
+		ArrayList<ArrayList<String>> listaPod = leerArray(ruta("pod.txt"));
 		for (int i = 0; i < listaPod.size(); i++) {
 			// Recorre el arraylist, pod a pod
 			ArrayList<String> podActual = listaPod.get(i);
@@ -185,11 +357,20 @@ public class Arranque {
 			String clave = dni + asignatura + tipoGrupo;
 
 			Pod miPod = new Pod(dni, asignatura, tipoGrupo, numeroGrupos);
-			pod.put(clave, miPod);
-		} 
+			mapa.put(clave, miPod);
+		}
+		IndicePod indice = IndicePod.crear(mapa.values());
+		pod = mapa;
+		indicePod = indice;
+	}
 
+	/**
+	 * Lee los profesores: profesores.txt
+	 * @throws IOException En caso de error leyendo el fichero
+	 */
+	private static void cargarProfesores() throws IOException {
 		/*
-		 * 5) Profesores: profesores.txt
+		 * Profesores: profesores.txt
 		 * Líneas:
 		 * 	(0) dni --> String
 		 * 	(1) Nombre y apellidos --> String
@@ -199,7 +380,8 @@ public class Arranque {
 		 * 	(5) Docencia impartida --> String (lista de docencias impartidas separada por ';') --! puede ser null (no imparte docencia)
 		 * Clave = DNI
 		 */
-		ArrayList<ArrayList<String>> listaProfesores = leerArray("ficheros/profesores.txt");
+		LinkedHashMap<String, Profesor> mapa = new LinkedHashMap<String, Profesor>();
+		ArrayList<ArrayList<String>> listaProfesores = leerArray(ruta("profesores.txt"));
 		for (int i = 0; i < listaProfesores.size(); i++) {
 			// Recorre el arraylist, profesor a profesor
 			ArrayList<String> profeActual = listaProfesores.get(i);
@@ -211,12 +393,19 @@ public class Arranque {
 			String docenciaImpartida = profeActual.size()==6?profeActual.get(5):null; // puede ser null
 			
 			Profesor profesor = new Profesor(clave, nombre, fechaNacimiento, categoria, departamento, docenciaImpartida);
-			profesores.put(clave, profesor);
+			mapa.put(clave, profesor);
 			
 		}
+		profesores = mapa;
+	}
 
+	/**
+	 * Lee los alumnos: alumnos.txt
+	 * @throws IOException En caso de error leyendo el fichero
+	 */
+	private static void cargarAlumnos() throws IOException {
 		/*
-		 * 6) Alumnos: alumnos.txt
+		 * Alumnos: alumnos.txt
 		 * Líneas:
 		 * 	(0) dni --> String
 		 * 	(1) Nombre y apellidos --> String
@@ -227,7 +416,9 @@ public class Arranque {
 		 *  (6) Docencia recibida --> String (lista de asignaturas separada por ';') --! puede ser null (no recibe docencia ninguna)
 		 * Clave = DNI
 		 */
-		ArrayList<ArrayList<String>> listaAlumnos = leerArray("ficheros/alumnos.txt");
+		LinkedHashMap<String, Alumno> mapa = new LinkedHashMap<String, Alumno>();
+		long matriculas = 0;
+		ArrayList<ArrayList<String>> listaAlumnos = leerArray(ruta("alumnos.txt"));
 		for (int i = 0; i < listaAlumnos.size(); i++) {
 			// Recorre el arraylist, alumno a alumno
 			ArrayList<String> alumnoActual = listaAlumnos.get(i);
@@ -240,14 +431,18 @@ public class Arranque {
 			String docenciaRecibida = alumnoActual.size()==7?alumnoActual.get(6):null;
 			
 			Alumno alumno = new Alumno(clave, nombre, email, fechaNacimiento, fechaIngreso, asignaturasSuperadas, docenciaRecibida);
-			alumnos.put(clave, alumno);
+			mapa.put(clave, alumno);
+			matriculas += alumno.getNumeroMatriculas();
 			
 		}
-
+		alumnos = mapa;
+		Monitorizacion.setMatriculas(matriculas);
 	}
 	
 	/**
 	 * Lee el fichero ejecucion.txt y carga sus instrucciones (1 línea = 1 instrucción) en memoria.
+	 * Al terminar escribe el resumen de las métricas de la ejecución y el perfil de las líneas más costosas,
+	 * si se han pedido (ver {@link Metricas} y {@link PerfilInstrucciones}).
 	 */
 	private static void cargarInstrucciones() {
 		// 1. Leer ejecucion.txt
@@ -255,27 +450,68 @@ public class Arranque {
 			instrucciones = leerSimple(FICHERO_INSTRUCCIONES);
 		} catch (Exception e) {
 			System.out.println("Fichero de ejecución no existente");
-			System.exit(1); // finaliza el programa
+			salir(1); // finaliza el programa
 		} 
-		// 2. Ejecutar comando a comando
-		for (String linea: instrucciones){
-			if(!linea.isEmpty() && !linea.startsWith("*")) {
-				
-				// Si la línea es un comando, la separa en parametros, respetando las comillas dobles
-				List<String> params = new ArrayList<String>();
-				Matcher m = Pattern.compile("([^\"]\\S*|\".+?\")\\s*").matcher(linea);
-				while (m.find())
-				    params.add(m.group(1).replace("\"", "")); 
-				params.remove(0); // elimina del array de parámetros el número de línea
-				Comandos.ejecutaComando(linea, params.toArray(new String[0]));
-			}
-			
-		}
+		// 2. Ejecutar comando a comando, escribiendo los ficheros modificados en segundo plano (ver EjecucionLote)
+		PerfilInstrucciones perfil = PerfilInstrucciones.crear();
+		long inicio = System.nanoTime();
+		EjecucionLote.ejecutar(instrucciones, puntoControl, perfil);
+		terminarPuntoControl();
+		Metricas.lote(System.nanoTime() - inicio);
+		Metricas.escribirResumen();
+		if(perfil!=null) perfil.escribirInforme(System.err);
 
 	}
 
 	
+	// PUNTO DE CONTROL:
+	
+	private static void abrirPuntoControl() {
+		try {
+			puntoControl = PuntoControl.abrir(FICHERO_INSTRUCCIONES);
+		}catch(FileNotFoundException e) {
+			// Sin fichero de instrucciones: se avisa al leerlas
+		}catch(IOException | RuntimeException e) {
+			System.out.println("Error al leer el punto de control " + PuntoControl.FICHERO + ". Se ejecuta sin punto de control.");
+		}
+	}
+	
+	private static void terminarPuntoControl() {
+		if(puntoControl==null) return;
+		try {
+			puntoControl.terminar();
+		}catch(IOException e) {
+			System.out.println("Error al borrar el fichero " + PuntoControl.FICHERO);
+		}
+		puntoControl = null;
+	}
+	
+	
 	// FUNCIONES AUXILIARES:
+	
+	/**
+	 * Termina el programa con System.exit, escribiendo antes todo lo que esté pendiente de escribir en segundo plano
+	 * (ver {@link PersistenciaDiferida#sincronizar()}). Cualquier salida del programa debe pasar por aquí.
+	 * @param estado Código de salida
+	 */
+	static void salir(int estado) {
+		PersistenciaDiferida.sincronizar();
+		System.exit(estado);
+	}
+	
+	/**
+	 * Ruta de un fichero de la base de datos: en el directorio de datos, salvo que se esté reanudando un lote interrumpido
+	 * que ya lo había reescrito, en cuyo caso se lee la versión escrita en el directorio actual.
+	 */
+	private static String ruta(String fichero) {
+		PuntoControl punto = puntoControl;
+		return punto!=null && punto.escritoAlInterrumpirse(fichero) ? fichero : DIRECTORIO_DATOS + fichero;
+	}
+	
+	private static String directorioDatos() {
+		String directorio = System.getProperty("centros.datos", "ficheros");
+		return directorio.endsWith("/") || directorio.endsWith(File.separator) ? directorio : directorio + "/";
+	}
 
 	/**
 	 * Lee un archivo con n elementos separados por el delimitador '*'.
@@ -345,42 +581,101 @@ public class Arranque {
 	}
 	
 	/**
-	 * Vuelca el contenido del LinkedHashMap al fichero de texto correspondiente.
+	 * Vuelca el contenido del mapa al fichero de texto correspondiente.
 	 * El nombre del fichero y la representación de los objetos se obtiene a través de la interfaz modelos.EscribibleEnFichero
+	 * Durante la ejecución de un lote solo se anota que el fichero está modificado y se escribe en segundo plano
+	 * a partir de una foto de los mapas (ver {@link PersistenciaDiferida}); en otro caso se escribe en el momento.
+	 * En modo simulación no se escribe nada.
 	 * @param mapa Mapa a escribir en el fichero correspondiente
 	 */
-	public static void sobreescribirFichero(LinkedHashMap<String, EscribibleEnFichero> mapa){
+	public static void sobreescribirFichero(Map<String, ? extends EscribibleEnFichero> mapa){
+		if(simulacion) return;
+		
 		// Obtenemos la lista con los objetos a escribir
-		Collection<EscribibleEnFichero> coleccion = mapa.values();
-		EscribibleEnFichero lista[] = coleccion.toArray(new EscribibleEnFichero[coleccion.size()]);
+		Collection<? extends EscribibleEnFichero> coleccion = mapa.values();
+		String nombreFichero = coleccion.iterator().next().getNombreFichero();
 		
-		// Abrimos el fichero correspondiente en modo sobreescritura
-
-		FileWriter writer = null;
+		PersistenciaDiferida diferida = PersistenciaDiferida.activa();
+		if(diferida!=null) {
+			diferida.modificado(nombreFichero, mapa);
+			return;
+		}
+		
+		escribirFichero(nombreFichero, coleccion.toArray(new EscribibleEnFichero[0]), null);
+		
+	}
+	
+	/**
+	 * Escribe un fichero de la base de datos en el directorio actual: primero en un fichero temporal
+	 * (ver {@link #escribirTemporal(String, EscribibleEnFichero[], Instantanea)}) y después lo sustituye por el anterior.
+	 * @param nombreFichero Nombre del fichero
+	 * @param elementos Elementos del fichero; se escriben separados por *
+	 * @param instantanea Instantánea de la que se toma el texto de los elementos (ver {@link Instantanea}),
+	 * o null si nadie los está modificando y se puede usar directamente su texto actual
+	 */
+	static void escribirFichero(String nombreFichero, EscribibleEnFichero[] elementos, Instantanea instantanea) {
+		if(!escribirTemporal(nombreFichero, elementos, instantanea)) return;
 		try {
-			writer = new FileWriter(lista[0].getNombreFichero(), false);
-			BufferedWriter buff = new BufferedWriter(writer);
-			PrintWriter printer = new PrintWriter(buff);
-
-			for(int i = 0; i<lista.length; i++) {
-				// Recorre todo el mapa, escribiendo sus elementos uno a uno
-				printer.print(lista[i].toTexto());
-				if(i<lista.length-1) { // añade un separador (*) entre elemento y elemento
-					printer.print("\n*\n");
+			PuntoControl.sustituir(nombreFichero);
+		}catch(IOException e) {
+			System.out.println("Error inesperado al escribir en el fichero " + nombreFichero);
+			e.printStackTrace();
+			return;
+		}
+		PuntoControl punto = puntoControl;
+		if(punto!=null) punto.ficheroEscrito(nombreFichero);
+		
+	}
+	
+	/**
+	 * Escribe el fichero temporal de un fichero de la base de datos (el nombre del fichero seguido de .tmp)
+	 * en el directorio actual y lo sincroniza con el disco, registrando la escritura en las métricas y en JFR.
+	 * El fichero no se sustituye hasta que se renombra con {@link PuntoControl#sustituir(String)}, para que
+	 * si el programa se interrumpe a mitad de la escritura el fichero siga completo; durante un lote se renombra
+	 * después de guardar el punto de control que lo incluye (ver {@link PersistenciaDiferida}).
+	 * @param nombreFichero Nombre del fichero
+	 * @param elementos Elementos del fichero; se escriben separados por *
+	 * @param instantanea Instantánea de la que se toma el texto de los elementos (ver {@link Instantanea}),
+	 * o null si nadie los está modificando y se puede usar directamente su texto actual
+	 * @return true si se ha escrito correctamente
+	 */
+	static boolean escribirTemporal(String nombreFichero, EscribibleEnFichero[] elementos, Instantanea instantanea) {
+		File temporal = new File(nombreFichero + ".tmp");
+		boolean escrito = false;
+		long inicio = System.nanoTime();
+		Eventos.Persistencia evento = new Eventos.Persistencia();
+		evento.begin();
+		try {
+			FileOutputStream salida = new FileOutputStream(temporal, false);
+			BufferedWriter buff = new BufferedWriter(new OutputStreamWriter(salida));
+			try {
+				for(int i = 0; i<elementos.length; i++) {
+					// Escribe los elementos uno a uno
+					if(i>0) buff.write(SEPARADOR); // añade un separador (*) entre elemento y elemento
+					buff.write(instantanea==null ? elementos[i].toTexto() : elementos[i].getTextoInstantanea(instantanea));
 				}
+				buff.flush();
+				salida.getFD().sync();
+			}finally {
+				buff.close();
 			}
-
-			// Cierra el fichero
-			printer.close();
-			buff.close();
-			writer.close();
+			escrito = true;
 			
 		} catch (IOException e) {
-			System.out.println("Error inesperado al escribir en el fichero " + lista[0].getNombreFichero());
+			System.out.println("Error inesperado al escribir en el fichero " + nombreFichero);
 			e.printStackTrace();
 		}
-
-
+		long duracion = System.nanoTime() - inicio;
+		Metricas.persistencia(nombreFichero, duracion);
+		Monitorizacion.escritura(nombreFichero, duracion);
+		evento.end();
+		if(evento.shouldCommit()) {
+			evento.fichero = nombreFichero;
+			evento.registros = elementos.length;
+			evento.bytes = temporal.length();
+			evento.commit();
+		}
+		return escrito;
 		
 	}
 	
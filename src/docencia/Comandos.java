@@ -1,21 +1,22 @@
 package docencia;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileReader;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import modelos.Alumno;
 import modelos.Asignatura;
 import modelos.Aula;
-import modelos.EscribibleEnFichero;
+import modelos.CalendarioOcupacion;
 import modelos.Persona;
+import modelos.Pod;
 import modelos.Profesor;
 
 /**
@@ -26,18 +27,62 @@ import modelos.Profesor;
  */
 public class Comandos {
 	
+	// Un parámetro es una palabra o un texto entre comillas dobles
+	private static final Pattern PARAMETRO = Pattern.compile("([^\"]\\S*|\".+?\")\\s*");
+	
 	// La clase no se puede instanciar:
 	private Comandos() {
 		
 	}
 
 	/**
-	 * Ejecuta la instrucción correspondiente.
+	 * Separa una instrucción en sus parámetros, respetando las comillas dobles (que se eliminan).
+	 * @param linea La instrucción
+	 * @return Lista con los parámetros, en orden
+	 */
+	public static List<String> separarParametros(String linea) {
+		List<String> params = new ArrayList<String>();
+		Matcher m = PARAMETRO.matcher(linea);
+		while (m.find())
+			params.add(m.group(1).replace("\"", ""));
+		return params;
+	}
+
+	/**
+	 * Ejecuta la instrucción correspondiente, registrando su duración y su resultado en {@link Metricas} y como evento de JFR.
 	 * @param instruccion La instrucción entera, es decir, la línea correspondiente del fichero ejecucion.txt
 	 * @param parametros La instrucción dividida (split) en sus parámetros.
 	 */
 	public static void ejecutaComando(String instruccion, String parametros[]) {
 		String comando = parametros[0].toLowerCase();
+		Eventos.Comando evento = new Eventos.Comando();
+		evento.begin();
+		long inicio = Metricas.inicioComando();
+		try {
+			ejecutar(comando, instruccion, parametros);
+		}finally {
+			String aviso = Metricas.finComando(comando, inicio);
+			Monitorizacion.comando();
+			evento.end();
+			if(evento.shouldCommit()) {
+				evento.comando = comando;
+				evento.clave = clave(comando, parametros);
+				evento.resultado = aviso==null ? "OK" : aviso;
+				evento.commit();
+			}
+		}
+	}
+	
+	/**
+	 * DNI o siglas del elemento sobre el que actúa un comando: el primer parámetro,
+	 * salvo en los comandos que indican antes si se trata de un alumno o un profesor.
+	 */
+	private static String clave(String comando, String[] parametros) {
+		int posicion = comando.equals("insertapersona") || comando.equals("asignagrupo") ? 2 : 1;
+		return parametros.length>posicion ? parametros[posicion] : null;
+	}
+	
+	private static void ejecutar(String comando, String instruccion, String parametros[]) {
 		switch (comando) {
 		case "insertapersona" :
 			insertarPersona(parametros);
@@ -67,6 +112,10 @@ public class Comandos {
 			obtenerOcupacionAula(parametros);
 			break;
 			
+		case "elegibles":
+			obtenerElegibles(parametros);
+			break;
+			
 		default:
 			// Si el comando no existe
 			Errores.comandoErroneo(instruccion);
@@ -112,7 +161,7 @@ public class Comandos {
 				
 				Profesor profesor = new Profesor(dni, nombre, fechaNacimiento, categoria, departamento, null);
 				Arranque.profesores.put(dni, profesor);
-				Arranque.sobreescribirFichero(new LinkedHashMap<String, EscribibleEnFichero>(Arranque.profesores));
+				Arranque.sobreescribirFichero(Arranque.profesores);
 				
 			}else {
 				Errores.errorComando(Errores.INSERTA_PERSONA, "Número de argumentos incorrecto");
@@ -151,7 +200,7 @@ public class Comandos {
 				// Llegados hasta aquí el alumno se puede registrar
 				Alumno alumno = new Alumno(dni, nombre, null, fechaNacimiento, fechaIngreso, null, null);
 				Arranque.alumnos.put(dni, alumno);
-				Arranque.sobreescribirFichero(new LinkedHashMap<String, EscribibleEnFichero>(Arranque.alumnos));
+				Arranque.sobreescribirFichero(Arranque.alumnos);
 			}
 			else {
 				Errores.errorComando(Errores.INSERTA_PERSONA, "Número de argumentos incorrecto");
@@ -194,8 +243,9 @@ public class Comandos {
 			}
 		}
 		
-		// Existe la asignatura?
-		if(!Arranque.asignaturas.containsKey(asignatura)) {
+		// Existe la asignatura? (se busca una sola vez y se usa en el resto de comprobaciones)
+		Asignatura datosAsignatura = Arranque.asignaturas.get(asignatura);
+		if(datosAsignatura==null) {
 			// No existe la asignatura
 			Errores.errorComando(Errores.ASIGNAR_GRUPO, "Asignatura inexistente");
 			return;
@@ -209,7 +259,7 @@ public class Comandos {
 		}
 		
 		// Grupos de la asignatura
-		if(Arranque.asignaturas.get(asignatura).getGrupo(grupo, tipoGrupo)==null) {
+		if(datosAsignatura.getGrupo(grupo, tipoGrupo)==null) {
 			Errores.errorComando(Errores.ASIGNAR_GRUPO, "Grupo inexistente");
 			return;
 		}
@@ -233,17 +283,7 @@ public class Comandos {
 		
 		// Alumno no matriculado?
 		if(perfil.equals("alumno")) {
-			// Obtenemos las asignaturas en las que está matriculado el alumno
-			ArrayList<Alumno.DocenciaRecibida> docencia = Arranque.alumnos.get(dni).getDocenciaRecibida();
-			boolean matriculado = false;
-			for(Alumno.DocenciaRecibida dr: docencia) {
-				if(dr.getSiglas().equals(asignatura)) {
-					matriculado = true;
-					break;
-				}
-			}
-			
-			if(!matriculado) {
+			if(!Arranque.alumnos.get(dni).estaMatriculado(asignatura)) {
 				Errores.errorComando(Errores.ASIGNAR_GRUPO, "Alumno no matriculado");
 				return;
 			}
@@ -251,20 +291,16 @@ public class Comandos {
 		
 		// Comprobaciones POD
 		if(perfil.equals("profesor")) {
-			// Presente en el pod del profesor?
-			String clave = dni + asignatura + tipoGrupo;
-			if(!Arranque.pod.containsKey(clave)) {
+			// Presente en el pod del profesor? (una sola consulta al índice, sin construir la clave como String)
+			Pod planificacion = Arranque.indicePod.buscar(dni, datosAsignatura, tipoGrupo);
+			if(planificacion==null) {
 				Errores.errorComando(Errores.ASIGNAR_GRUPO, "Asignatura/tipo-grupo no presente en el POD del profesor");
 				return;
 			}
 			
 			// Número de grupos válido?
-			int numeroGruposImpartidos = 0;
-			for(Profesor.DocenciaImpartida di: Arranque.profesores.get(dni).getDocenciaImpartida()) {
-				if(di.getSiglas().equals(asignatura)&&di.getTipoGrupo()==tipoGrupo) numeroGruposImpartidos++;
-				
-			}
-			float maximo = Arranque.pod.get(dni+asignatura+tipoGrupo).getNumeroGrupos();
+			int numeroGruposImpartidos = Arranque.profesores.get(dni).getNumeroGrupos(asignatura, tipoGrupo);
+			float maximo = planificacion.getNumeroGrupos();
 			if(numeroGruposImpartidos>=maximo){
 				// Número de grupos máximos alcanzado
 				Errores.errorComando(Errores.ASIGNAR_GRUPO, "Número de grupos superior al contemplado en el POD");
@@ -276,10 +312,10 @@ public class Comandos {
 		
 		// Duración de una clase del grupo que estamos intentando asignar	(grupo1)
 		int duracion1 = tipoGrupo=='A'?
-				Arranque.asignaturas.get(asignatura).getDuracionGrupoA():
-				Arranque.asignaturas.get(asignatura).getDuracionGrupoB();
+				datosAsignatura.getDuracionGrupoA():
+				datosAsignatura.getDuracionGrupoB();
 
-		Asignatura.Grupo grupo1 = Arranque.asignaturas.get(asignatura).getGrupo(grupo, tipoGrupo);
+		Asignatura.Grupo grupo1 = datosAsignatura.getGrupo(grupo, tipoGrupo);
 
 		// Horas ocupadas por el grupo1
 		int horas1[] = new int[duracion1];
@@ -389,14 +425,14 @@ public class Comandos {
 			// Asigna el grupo al alumno
 			Alumno alumno = Arranque.alumnos.get(dni);
 			alumno.asignarGrupo(asignatura, tipoGrupo, grupo);
-			Arranque.sobreescribirFichero(new LinkedHashMap<String, EscribibleEnFichero>(Arranque.alumnos));
+			Arranque.sobreescribirFichero(Arranque.alumnos);
 		}
 		
 		if(perfil.equals("profesor")) {
 			// Asigna el grupo al profesor
 			Profesor profesor = Arranque.profesores.get(dni);
 			profesor.asignarGrupo(asignatura, tipoGrupo, grupo);
-			Arranque.sobreescribirFichero(new LinkedHashMap<String, EscribibleEnFichero>(Arranque.profesores));
+			Arranque.sobreescribirFichero(Arranque.profesores);
 		
 		}
 		
@@ -431,38 +467,23 @@ public class Comandos {
 		}
 		
 		// Ya matriculado?
-		ArrayList<Alumno.DocenciaRecibida> docencia = Arranque.alumnos.get(dni).getDocenciaRecibida();
-		for(Alumno.DocenciaRecibida dr: docencia) {
-			if(dr.getSiglas().equals(asignatura)) {
-				// Si está ya matriculado se aborta la operación
-				Errores.errorComando(Errores.MATRICULAR_ALUMNO, "Ya es alumno de la asignatura indicada");
-				return;
-			}
+		Alumno alumno = Arranque.alumnos.get(dni);
+		if(alumno.estaMatriculado(asignatura)) {
+			// Si está ya matriculado se aborta la operación
+			Errores.errorComando(Errores.MATRICULAR_ALUMNO, "Ya es alumno de la asignatura indicada");
+			return;
 		}
 		
-		// Prerrequisitos
-		String[] prerrequisitos = Arranque.asignaturas.get(asignatura).getPrerrequisitos();
-		ArrayList<Alumno.AsignaturaSuperada> superadas = Arranque.alumnos.get(dni).getAsignaturasSuperadas();
-		boolean cumple = false;
-		for(String pr: prerrequisitos) {
-			// Comprueba los prerrequisitos, uno a uno
-			cumple = false;
-			for(Alumno.AsignaturaSuperada as: superadas) {
-				if(as.getSiglas().equals(pr)) {
-					cumple = true;
-					break;
-				}
-			}
-			if(!cumple) {
-				// Hay un prerrequisito que no se está cumpliendo
-				Errores.errorComando(Errores.MATRICULAR_ALUMNO, "No cumple requisitos");
-				return;
-			}
+		// Prerrequisitos: todos deben estar entre las asignaturas superadas
+		if(!alumno.cumplePrerrequisitos(Arranque.asignaturas.get(asignatura))) {
+			Errores.errorComando(Errores.MATRICULAR_ALUMNO, "No cumple requisitos");
+			return;
 		}
 		
 		// Llegados aquí se puede matricular al alumno
-		Arranque.alumnos.get(dni).matricular(asignatura);
-		Arranque.sobreescribirFichero(new LinkedHashMap<String, EscribibleEnFichero>(Arranque.alumnos));
+		alumno.matricular(asignatura);
+		Monitorizacion.sumarMatriculas(1);
+		Arranque.sobreescribirFichero(Arranque.alumnos);
 		
 	}
 	
@@ -554,7 +575,8 @@ public class Comandos {
 		
 		// Llegados hasta aquí ya se puede crear el grupo
 		asignatura.crearGrupoAsignatura(tipoGrupo, idGrupo, dia, horaInicio, aula);
-		Arranque.sobreescribirFichero(new LinkedHashMap<String, EscribibleEnFichero>(Arranque.asignaturas));
+		Monitorizacion.sumarGrupo();
+		Arranque.sobreescribirFichero(Arranque.asignaturas);
 		
 	}
 	
@@ -592,50 +614,22 @@ public class Comandos {
 			}
 		}
 		
-		// Leemos los ficheros y cargamos su contenido en un HashMap, donde la clave será el DNI del alumno y el valor su nota
-		LinkedHashMap<String, Float> notasA = new LinkedHashMap<String, Float>();
-		LinkedHashMap<String, Float> notasB = new LinkedHashMap<String, Float>();
-		
-		// Lectura del fichero de notas A
+		// Leemos los ficheros de notas. Cada uno se carga en una tabla con los pares DNI-nota en el orden del fichero
+		LectorNotas.TablaNotas notasA;
+		LectorNotas.TablaNotas notasB;
 		try {
-			BufferedReader lectura = new BufferedReader(new FileReader(ficheroNotasA));
-			String linea;
-			while((linea=lectura.readLine())!=null){
-				// Hasta llegar al final del fichero, va leyendo línea a línea
-				if(!linea.isEmpty()) {
-					String[] params = linea.trim().split("\\s+");
-					String dni = params[0].trim();
-					float nota = Float.parseFloat(params[1].trim());
-					notasA.put(dni, nota);
-				}
-			}
-
-			// Una vez finalizada la lectura del fichero
-			lectura.close();
-
-			// Lectura del fichero de notas B
-			lectura = new BufferedReader(new FileReader(ficheroNotasB));
-			while((linea=lectura.readLine())!=null){
-				// Hasta llegar al final del fichero, va leyendo línea a línea
-				if(!linea.isEmpty()) {
-					String[] params = linea.trim().split("\\s+");
-					String dni = params[0].trim();
-					float nota = Float.parseFloat(params[1].trim());
-					notasB.put(dni, nota);
-				}
-			}
+			notasA = LectorNotas.leer(ficheroNotasA);
+			notasB = LectorNotas.leer(ficheroNotasB);
 		}catch(IOException e) {
 			System.out.println("Error al leer los ficheros. Se aborta la operación.");
 			return;
 		}
 		
-		Collection<String> dniAlumnos = notasA.keySet();
-		
-		int linea = 0;
-		for(String dni: dniAlumnos) {
-			// Evaluamos todos los alumnos del fichero, uno a uno
-			linea++;
+		for(int i = 0; i<notasA.tamano(); i++) {
+			// Evaluamos todos los alumnos del fichero, uno a uno, cruzando su nota A con su nota B
+			int linea = i + 1;
 			String error = "Error en línea " + linea + ": ";
+			String dni = notasA.getDni(i);
 			
 			// Existe el alumno?
 			if(!Arranque.alumnos.containsKey(dni)) {
@@ -643,26 +637,18 @@ public class Comandos {
 				continue;
 			}
 			
-			// El alumno está matriculado en la asignatura?
+			// El alumno está matriculado en la asignatura? (consulta al bitset de matrículas, sin recorrer la docencia recibida)
 			Alumno alumno = Arranque.alumnos.get(dni);
-			boolean matriculado = false;
-			for(Alumno.DocenciaRecibida dr: alumno.getDocenciaRecibida()) {
-				if(dr.getSiglas().equals(siglasAsignatura)) {
-					matriculado = true;
-					break;
-				}
-			}
-			
-			if(!matriculado) {
+			if(!alumno.estaMatriculado(siglasAsignatura)) {
 				Errores.errorComando(Errores.EVALUAR_ASIGNATURA, error + "Alumno no matriculado: " + dni);
 				continue;
 			}
 			
 			
-			// Notas correctas?
-			float notaA = notasA.get(dni);
-			float notaB = notasB.get(dni);
-			if(notaA>5 || notaA<0 || notaB>5 || notaB<0) {
+			// Notas correctas? (si el alumno no aparece en el fichero de notas B o su nota no es un número, es NaN)
+			float notaA = notasA.getNota(i);
+			float notaB = notasB.buscarNota(notasA, i);
+			if(Float.isNaN(notaA) || Float.isNaN(notaB) || notaA>5 || notaA<0 || notaB>5 || notaB<0) {
 				Errores.errorComando(Errores.EVALUAR_ASIGNATURA, error + "Nota grupo A/B incorrecta");
 				continue;
 			}
@@ -670,11 +656,12 @@ public class Comandos {
 			// Llegados hasta aquí ya se puede evaluar la asignatura
 			float notaTotal = notaA + notaB; // nota entre 0 y 10
 			alumno.evaluarAsignatura(notaTotal, siglasAsignatura, cursoAcademico);
+			Monitorizacion.sumarMatriculas(-1);
 			
 		}
 		
 		// Actualizamos el fichero alumnos.txt
-		Arranque.sobreescribirFichero(new LinkedHashMap<String, EscribibleEnFichero>(Arranque.alumnos));
+		Arranque.sobreescribirFichero(Arranque.alumnos);
 		
 	}
 
@@ -682,48 +669,55 @@ public class Comandos {
 	 * Genera el expediente de un alumno. 
 	 * Se trata de una relación ordenada, por curso y asignatura, de todas las asignaturas aprobadas.
 	 * Se guarda en un fichero de texto.
+	 * Si se especifica * como alumno, se generan en paralelo los expedientes de todos los alumnos (ver {@link Expedientes}):
+	 * si la salida es un directorio, uno por fichero (DNI.txt); si no, todos en un único fichero.
+	 * Opcionalmente se puede indicar a continuación el número de hilos a utilizar.
 	 * @param parametros El comando de ejecución separado en parámetros
 	 */
 	private static void obtenerExpediente(String[] parametros) {
-		if(parametros.length!=3) {
-			// Número de argumentos incorrecto
-			Errores.errorComando(Errores.EXPEDIENTE_ALUMNO, "Número de argumentos incorrecto");
+		boolean todos = parametros.length>1 && parametros[1].equals("*");
+		Comprobacion<?> argumentos = comprobarArgumentos(Errores.EXPEDIENTE_ALUMNO, parametros, 3, todos ? 4 : 3);
+		if(!argumentos.esCorrecta()) {
+			argumentos.avisar();
 			return;
 		}
 		
 		String dniAlumno = parametros[1];
 		String nombreSalida = parametros[2];
 		
+		if(todos) {
+			// Se generan los expedientes de todos los alumnos
+			Comprobacion<Integer> hilos = comprobarHilos(Errores.EXPEDIENTE_ALUMNO, parametros.length==4 ? parametros[3] : null);
+			if(!hilos.esCorrecta()) {
+				hilos.avisar();
+				return;
+			}
+			
+			if(Arranque.esSimulacion()) return;
+			
+			try {
+				Alumno[] alumnos = Arranque.alumnos.values().toArray(new Alumno[0]);
+				if(Expedientes.esDirectorio(nombreSalida)) Expedientes.exportarPorAlumno(alumnos, nombreSalida, hilos.getValor());
+				else Expedientes.exportarConjunto(alumnos, nombreSalida, hilos.getValor());
+			}catch(IOException e) {
+				// Error en la escritura de algún fichero
+				System.out.println("Error al escribir en el fichero. Se aborta la operación.");
+			}
+			return;
+		}
+		
 		// Existe el alumno?
-		if(!Arranque.alumnos.containsKey(dniAlumno)) {
-			Errores.errorComando(Errores.EXPEDIENTE_ALUMNO, "Alumno inexistente");
+		Comprobacion<Alumno> alumno = comprobarAlumno(Errores.EXPEDIENTE_ALUMNO, dniAlumno);
+		if(!alumno.esCorrecta()) {
+			alumno.avisar();
 			return;
 		}
 		
+		if(Arranque.esSimulacion()) return;
+		
 		// Escribe el fichero con las notas obtenidas por el alumno en todas sus asignaturas aprobadas
 		try {
-			float sumaNotas = 0; int asignaturas = 0;
-			BufferedWriter bw = new BufferedWriter(new FileWriter(nombreSalida, false));
-			ArrayList<Alumno.AsignaturaSuperada> superadas = new ArrayList<Alumno.AsignaturaSuperada>(Arranque.alumnos.get(dniAlumno).getAsignaturasSuperadas());
-			Collections.sort(superadas); // ordena las asignaturas aprobadas
-
-			for(Alumno.AsignaturaSuperada as: superadas) {
-				// Recorre todas las asignaturas aprobadas por el alumno
-				asignaturas++;
-				sumaNotas += (as.getNota());
-				String linea = as.getCurso() + "; " + as.getSiglas() + "; " + as.getNota() + "; " + as.getCursoAcademico();
-				bw.write(linea);
-				bw.newLine();
-			}
-			
-			// Nota media del expediente
-			float notaMedia = sumaNotas/asignaturas;
-			DecimalFormat formato = new DecimalFormat("#.00");
-			bw.write("Nota media del expediente: " + formato.format(notaMedia));
-			bw.newLine();
-			
-			bw.close();
-			
+			Expedientes.escribir(alumno.getValor(), new File(nombreSalida));
 		}catch(IOException e) {
 			// Error en la escritura del fichero
 			System.out.println("Error al escribir en el fichero. Se aborta la operación.");
@@ -735,37 +729,202 @@ public class Comandos {
 	/**
 	 * Genera el calendario de ocupación semanal un aula.
 	 * Si se especifica * como aula, se mostrará el calendario de todas.
-	 * La salida se realiza por pantalla.
+	 * La salida se realiza por pantalla, salvo que se indique un fichero de salida.
+	 * En ese caso se puede indicar también el formato (texto, csv o json); si no, se deduce de la extensión del fichero.
 	 * @param parametros El comando de ejecución separado en parámetros
 	 */
 	private static void obtenerOcupacionAula(String[] parametros) {
-		if(parametros.length!=2) {
-			// Número de argumentos incorrecto?
-			Errores.errorComando(Errores.CALENDARIO_OCUPACION_AULA, "Número de argumentos incorrecto");
+		Comprobacion<?> argumentos = comprobarArgumentos(Errores.CALENDARIO_OCUPACION_AULA, parametros, 2, 4);
+		if(!argumentos.esCorrecta()) {
+			argumentos.avisar();
 			return;
 		}
 		
 		String siglasAula = parametros[1];
+		String fichero = parametros.length>=3 ? parametros[2] : null;
 		
-		if(siglasAula.equals("*")) {
-			// Se genera el calendario de todas las aulas
-			for(Aula aula: Arranque.aulas.values()) {
-				aula.obtenerCalendarioOcupacion();
-				System.out.println(); System.out.println(); // doble salto de línea
-			}
-		}else {
-			// Se genera solo el calendario del aula especificada
-			// Existe el aula?
-			if(!Arranque.aulas.containsKey(siglasAula)) {
-				// No existe el aula
-				Errores.errorComando(Errores.CALENDARIO_OCUPACION_AULA, "No existe el aula " + siglasAula);
-				return;
+		// Formato de salida
+		Comprobacion<CalendarioOcupacion.Formato> formato = comprobarFormato(parametros.length==4 ? parametros[3] : null,
+				fichero!=null ? CalendarioOcupacion.Formato.deFichero(fichero) : CalendarioOcupacion.Formato.TEXTO);
+		if(!formato.esCorrecta()) {
+			formato.avisar();
+			return;
+		}
+		
+		// Aula especificada (existe?) o, con *, todas: se genera el calendario de todas en una sola pasada por los grupos
+		Comprobacion<Collection<Aula>> aulas = comprobarAulas(siglasAula);
+		if(!aulas.esCorrecta()) {
+			aulas.avisar();
+			return;
+		}
+		boolean todas = siglasAula.equals("*");
+		
+		if(Arranque.esSimulacion()) return;
+		
+		Collection<CalendarioOcupacion> calendarios = CalendarioOcupacion.generar(aulas.getValor()).values();
+		try {
+			if(fichero==null) {
+				CalendarioOcupacion.escribir(calendarios, formato.getValor(), todas, System.out);
+			}else {
+				BufferedWriter bw = new BufferedWriter(new FileWriter(fichero, false));
+				try {
+					CalendarioOcupacion.escribir(calendarios, formato.getValor(), todas, bw);
+				}finally {
+					bw.close();
+				}
 			}
-			Arranque.aulas.get(siglasAula).obtenerCalendarioOcupacion();
+		}catch(IOException e) {
+			// Error en la escritura del fichero
+			System.out.println("Error al escribir en el fichero. Se aborta la operación.");
 		}
 		
+	}
+	
+	/**
+	 * Escribe en un fichero CSV, para cada alumno y cada asignatura, si el alumno se podría matricular en ella
+	 * (ver {@link PlanificadorMatricula}). No ejecuta ninguna matrícula ni modifica los ficheros de la base de datos.
+	 * Opcionalmente se puede indicar a continuación el número de hilos a utilizar.
+	 * @param parametros El comando de ejecución separado en parámetros
+	 */
+	private static void obtenerElegibles(String[] parametros) {
+		Comprobacion<?> argumentos = comprobarArgumentos(Errores.ALUMNOS_ELEGIBLES, parametros, 2, 3);
+		if(!argumentos.esCorrecta()) {
+			argumentos.avisar();
+			return;
+		}
+		
+		Comprobacion<Integer> hilos = comprobarHilos(Errores.ALUMNOS_ELEGIBLES, parametros.length==3 ? parametros[2] : null);
+		if(!hilos.esCorrecta()) {
+			hilos.avisar();
+			return;
+		}
+		
+		if(Arranque.esSimulacion()) return;
+		
+		try {
+			PlanificadorMatricula.exportar(parametros[1], hilos.getValor());
+		}catch(IOException e) {
+			// Error en la escritura del fichero
+			System.out.println("Error al escribir en el fichero. Se aborta la operación.");
+		}
 		
 	}
 	
+	// COMPROBACIONES: las usan tanto los comandos de ejecucion.txt como las consultas de ServidorConsultas,
+	// que solo se diferencian en dónde escriben el aviso o el resultado
+	
+	/**
+	 * Comprueba el número de argumentos de un comando (contando el nombre del comando).
+	 * @param siglas Siglas de los avisos del comando (ver {@link Errores})
+	 * @param parametros El comando separado en parámetros
+	 * @param minimo Número mínimo de parámetros
+	 * @param maximo Número máximo de parámetros
+	 * @return Comprobación sin valor, o con el aviso si el número no es correcto
+	 */
+	static Comprobacion<Void> comprobarArgumentos(String siglas, String[] parametros, int minimo, int maximo) {
+		if(parametros.length<minimo || parametros.length>maximo) return Comprobacion.aviso(siglas, "Número de argumentos incorrecto");
+		return Comprobacion.correcta(null);
+	}
+	
+	/**
+	 * Comprueba el número de hilos indicado en un comando.
+	 * @param siglas Siglas de los avisos del comando (ver {@link Errores})
+	 * @param parametro Número de hilos, o null si no se indica (se usa uno por procesador)
+	 * @return Comprobación con el número de hilos, o con el aviso si no es un número positivo
+	 */
+	static Comprobacion<Integer> comprobarHilos(String siglas, String parametro) {
+		if(parametro==null) return Comprobacion.correcta(Runtime.getRuntime().availableProcessors());
+		int hilos;
+		try {
+			hilos = Integer.parseInt(parametro);
+		}catch(NumberFormatException e) {
+			hilos = 0;
+		}
+		if(hilos<1) return Comprobacion.aviso(siglas, "Número de hilos incorrecto");
+		return Comprobacion.correcta(hilos);
+	}
+	
+	/**
+	 * Comprueba que exista un alumno.
+	 * @param siglas Siglas de los avisos del comando (ver {@link Errores})
+	 * @param dni DNI del alumno
+	 * @return Comprobación con el alumno, o con el aviso si no existe
+	 */
+	static Comprobacion<Alumno> comprobarAlumno(String siglas, String dni) {
+		Alumno alumno = Arranque.alumnos.get(dni);
+		if(alumno==null) return Comprobacion.aviso(siglas, "Alumno inexistente");
+		return Comprobacion.correcta(alumno);
+	}
+	
+	/**
+	 * Comprueba el formato de salida del calendario de ocupación de las aulas.
+	 * @param nombre Nombre del formato (texto, csv o json), o null si no se indica
+	 * @param porDefecto Formato si no se indica
+	 * @return Comprobación con el formato, o con el aviso si no existe
+	 */
+	static Comprobacion<CalendarioOcupacion.Formato> comprobarFormato(String nombre, CalendarioOcupacion.Formato porDefecto) {
+		if(nombre==null) return Comprobacion.correcta(porDefecto);
+		CalendarioOcupacion.Formato formato = CalendarioOcupacion.Formato.deNombre(nombre);
+		if(formato==null) return Comprobacion.aviso(Errores.CALENDARIO_OCUPACION_AULA, "Formato de salida incorrecto: " + nombre);
+		return Comprobacion.correcta(formato);
+	}
+	
+	/**
+	 * Comprueba el aula del calendario de ocupación.
+	 * @param siglasAula Siglas del aula, o * para todas
+	 * @return Comprobación con las aulas, o con el aviso si no existe el aula
+	 */
+	static Comprobacion<Collection<Aula>> comprobarAulas(String siglasAula) {
+		if(siglasAula.equals("*")) return Comprobacion.correcta(Arranque.aulas.values());
+		Aula aula = Arranque.aulas.get(siglasAula);
+		if(aula==null) return Comprobacion.aviso(Errores.CALENDARIO_OCUPACION_AULA, "No existe el aula " + siglasAula);
+		return Comprobacion.correcta(Collections.singletonList(aula));
+	}
+	
+	/**
+	 * Resultado de una comprobación de un comando: el valor obtenido si es correcta, o el aviso que aborta el comando.
+	 * @param <T> Tipo del valor
+	 */
+	static final class Comprobacion<T> {
+		private final T valor;
+		private final String siglas;
+		private final String aviso;
+		
+		private Comprobacion(T valor, String siglas, String aviso) {
+			this.valor = valor;
+			this.siglas = siglas;
+			this.aviso = aviso;
+		}
+		
+		static <T> Comprobacion<T> correcta(T valor) {
+			return new Comprobacion<T>(valor, null, null);
+		}
+		
+		static <T> Comprobacion<T> aviso(String siglas, String aviso) {
+			return new Comprobacion<T>(null, siglas, aviso);
+		}
+		
+		boolean esCorrecta() {
+			return aviso==null;
+		}
+		
+		T getValor() {
+			return valor;
+		}
+		
+		/**
+		 * Aviso tal como se escribe en avisos.txt (ver {@link Errores#errorComando(String, String)}).
+		 */
+		String getAviso() {
+			return siglas + " -- " + aviso;
+		}
+		
+		/**
+		 * Registra el aviso en avisos.txt, como cualquier otro aviso de un comando.
+		 */
+		void avisar() {
+			Errores.errorComando(siglas, aviso);
+		}
+	}
 	
 }
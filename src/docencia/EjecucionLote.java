@@ -0,0 +1,117 @@
+package docencia;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Ejecución de las instrucciones de ejecucion.txt en tres etapas:
+ * <ol>
+ * <li>Separación en parámetros: se hace por adelantado en varios hilos, en bloques de líneas consecutivas.
+ * Como mucho hay {@link #BLOQUES_EN_CURSO} bloques separados pendientes de aplicar, para acotar la memoria.
+ * <li>Validación y aplicación de cada comando: en el hilo principal, en el orden del fichero, igual que antes.
+ * <li>Escritura de los ficheros modificados, de los avisos y del punto de control: en segundo plano ({@link PersistenciaDiferida}).
+ * </ol>
+ * Así el hilo principal solo ejecuta los comandos y el tiempo total se acerca al de aplicarlos.
+ *
+ * El número de hilos de la primera etapa se elige con -Dcentros.lote.hilos=N (por defecto, uno por procesador).
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+class EjecucionLote {
+
+	private static final int HILOS = Math.max(1, Integer.getInteger("centros.lote.hilos", Runtime.getRuntime().availableProcessors()));
+	private static final int LINEAS_POR_BLOQUE = 256;
+	private static final int BLOQUES_EN_CURSO = 4*HILOS;
+
+	// La clase no se puede instanciar:
+	private EjecucionLote() {
+
+	}
+
+	/**
+	 * Ejecuta las instrucciones y espera a que se escriba todo lo que han modificado.
+	 * @param instrucciones Líneas de ejecucion.txt, sin las líneas en blanco
+	 * @param puntoControl Punto de control del lote (puede ser null)
+	 * @param perfil Perfil de las instrucciones (puede ser null)
+	 */
+	static void ejecutar(List<String> instrucciones, PuntoControl puntoControl, PerfilInstrucciones perfil) {
+		ExecutorService separacion = Executors.newFixedThreadPool(HILOS, tarea -> {
+			Thread hilo = new Thread(tarea, "separacion-parametros");
+			hilo.setDaemon(true);
+			return hilo;
+		});
+		PersistenciaDiferida persistencia = PersistenciaDiferida.iniciar(puntoControl, perfil);
+		try {
+			ArrayDeque<Future<String[][]>> bloques = new ArrayDeque<Future<String[][]>>();
+			int siguienteBloque = 0;
+			for(int inicio = 0; inicio<instrucciones.size(); inicio += LINEAS_POR_BLOQUE) {
+				// Mantiene la etapa de separación por delante de la aplicación
+				while(bloques.size()<BLOQUES_EN_CURSO && siguienteBloque<instrucciones.size()) {
+					final int desde = siguienteBloque;
+					bloques.add(separacion.submit(() -> separar(instrucciones, desde, puntoControl)));
+					siguienteBloque += LINEAS_POR_BLOQUE;
+				}
+
+				String[][] parametros = esperar(bloques.poll());
+				for(int j = 0; j<parametros.length; j++) {
+					if(parametros[j]==null) continue; // comentario o línea aplicada antes de interrumpirse
+					int posicion = inicio + j;
+					String linea = instrucciones.get(posicion);
+					String[] params = parametros[j];
+					persistencia.aplicar(posicion, linea, params[0], () -> Comandos.ejecutaComando(linea, params));
+				}
+			}
+		}finally {
+			separacion.shutdownNow();
+			persistencia.terminar();
+		}
+	}
+
+	/**
+	 * Separa en parámetros un bloque de líneas, sin el número de línea.
+	 * Las líneas que no hay que ejecutar quedan a null.
+	 */
+	private static String[][] separar(List<String> instrucciones, int desde, PuntoControl puntoControl) {
+		int hasta = Math.min(desde + LINEAS_POR_BLOQUE, instrucciones.size());
+		String[][] parametros = new String[hasta - desde][];
+		for(int i = desde; i<hasta; i++) {
+			String linea = instrucciones.get(i);
+			if(linea.isEmpty() || linea.startsWith("*")) continue;
+			if(puntoControl!=null && puntoControl.yaAplicada(i)) continue;
+
+			// Separa la línea en parámetros, respetando las comillas dobles
+			List<String> params = Comandos.separarParametros(linea);
+			params.remove(0); // elimina del array de parámetros el número de línea
+			parametros[i - desde] = params.toArray(new String[0]);
+		}
+		return parametros;
+	}
+
+	/**
+	 * Espera a que se separe un bloque, propagando los errores de la separación al hilo principal.
+	 */
+	private static String[][] esperar(Future<String[][]> bloque) {
+		boolean interrumpido = false;
+		try {
+			while(true) {
+				try {
+					return bloque.get();
+				}catch(InterruptedException e) {
+					interrumpido = true;
+				}
+			}
+		}catch(ExecutionException e) {
+			Throwable causa = e.getCause();
+			if(causa instanceof RuntimeException) throw (RuntimeException) causa;
+			if(causa instanceof Error) throw (Error) causa;
+			throw new IllegalStateException(causa);
+		}finally {
+			if(interrumpido) Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -3,6 +3,13 @@ package docencia;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Clase de gestión de los errores durante la ejecución del programa.
@@ -16,7 +23,7 @@ import java.io.IOException;
  */
 public class Errores {
 
-	private final static String nombreFichero = "avisos.txt";
+	private static volatile String nombreFichero = "avisos.txt";
 	
 	/**
 	 * Siglas para los errores producidos por el comando "Insertar persona".
@@ -53,15 +60,38 @@ public class Errores {
 	 */
 	public final static String EXPEDIENTE_ALUMNO = "EXP";
 	
+	/**
+	 * Siglas para los errores producidos por el comando "Alumnos elegibles".
+	 */
+	public final static String ALUMNOS_ELEGIBLES = "ELEG";
+	
+	/**
+	 * Siglas con las que se cuentan en las métricas los comandos que no existen.
+	 */
+	public final static String COMANDO_ERRONEO = "CMD";
+	
 	
 	private static void nuevaLinea(String linea) {
+		// Durante la ejecución de un lote los avisos se escriben en segundo plano (ver PersistenciaDiferida)
+		PersistenciaDiferida diferida = PersistenciaDiferida.activa();
+		if(diferida!=null) diferida.aviso(linea);
+		else escribirAvisos(Collections.singletonList(linea));
+		
+	}
+	
+	/**
+	 * Añade líneas al final del fichero de avisos.
+	 * Si avisos.txt aún no existe, lo crea.
+	 * @param lineas Líneas a escribir
+	 */
+	static void escribirAvisos(List<String> lineas) {
 		try {
-			// Escribe una línea en el fichero de avisos
-			// Si avisos.txt aún no existe, lo crea
 			FileWriter fw = new FileWriter(nombreFichero, true);
 			BufferedWriter bw = new BufferedWriter(fw);
-			bw.write(linea);
-			bw.newLine();
+			for(String linea: lineas) {
+				bw.write(linea);
+				bw.newLine();
+			}
 			bw.close();
 			fw.close();
 		} catch (IOException e) {
@@ -72,12 +102,51 @@ public class Errores {
 		
 	}
 	
+	/**
+	 * Sincroniza el fichero de avisos con el disco.
+	 * @return Longitud del fichero en bytes (0 si aún no existe), para guardarla en el punto de control
+	 * @throws IOException En caso de error al sincronizar
+	 */
+	static long sincronizarAvisos() throws IOException {
+		Path fichero = Paths.get(nombreFichero);
+		if(!Files.exists(fichero)) return 0;
+		FileChannel canal = FileChannel.open(fichero, StandardOpenOption.WRITE);
+		try {
+			canal.force(true);
+			return canal.size();
+		}finally {
+			canal.close();
+		}
+	}
+	
+	/**
+	 * Descarta los avisos escritos a partir de una longitud del fichero de avisos: los de las líneas que se han aplicado
+	 * después del último punto de control, que se vuelven a escribir al reanudar la ejecución (ver {@link PuntoControl}).
+	 * @param longitud Longitud del fichero en bytes guardada en el punto de control
+	 * @throws IOException En caso de error al recortar el fichero
+	 */
+	static void recortarAvisos(long longitud) throws IOException {
+		Path fichero = Paths.get(nombreFichero);
+		if(!Files.exists(fichero)) return;
+		FileChannel canal = FileChannel.open(fichero, StandardOpenOption.WRITE);
+		try {
+			if(canal.size()>longitud) {
+				canal.truncate(longitud);
+				canal.force(true);
+			}
+		}finally {
+			canal.close();
+		}
+	}
+	
 	/**
 	 * Registra un error producido durante la ejecución de un comando.
 	 * @param siglas Siglas del comando, disponibles como constantes en esta misma clase.
 	 * @param aviso El aviso producido.
 	 */
 	public static void errorComando(String siglas, String aviso) {
+		Metricas.aviso(siglas);
+		registrarEvento(siglas, aviso);
 		nuevaLinea(siglas + " -- " + aviso);
 		
 	}
@@ -87,9 +156,31 @@ public class Errores {
 	 * @param comando El comando introducido.
 	 */
 	public static void comandoErroneo(String comando) {
+		Metricas.aviso(COMANDO_ERRONEO);
+		registrarEvento(COMANDO_ERRONEO, comando);
 		nuevaLinea("Comando incorrecto: " + comando);
 	}
 	
+	private static void registrarEvento(String siglas, String aviso) {
+		Eventos.Aviso evento = new Eventos.Aviso();
+		if(evento.shouldCommit()) {
+			evento.siglas = siglas;
+			evento.aviso = aviso;
+			evento.commit();
+		}
+	}
+	
+	/**
+	 * Escribe los avisos a partir de ahora en otro fichero, que se vacía si ya existía.
+	 * Se usa en el modo simulación para no mezclar sus avisos con los de las ejecuciones reales.
+	 * @param fichero Fichero de avisos
+	 * @throws IOException En caso de error al vaciar el fichero
+	 */
+	static void redirigir(String fichero) throws IOException {
+		new FileWriter(fichero, false).close();
+		nombreFichero = fichero;
+	}
+	
 	// La clase no se puede instanciar:
 	private Errores() {
 		
@@ -0,0 +1,99 @@
+package docencia;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Eventos de Java Flight Recorder del programa: carga de cada fichero de la base de datos, ejecución de cada comando,
+ * escritura de cada fichero y cada aviso de avisos.txt. Permiten relacionar lo que muestra JFR (CPU, memoria, GC)
+ * con el trabajo que se está haciendo en cada momento.
+ *
+ * Se graban al arrancar el programa con -XX:StartFlightRecording (o conectándose con jcmd). Si no se está grabando,
+ * crear un evento y llamar a shouldCommit() no cuesta casi nada, por lo que los datos de cada evento solo se calculan
+ * cuando se va a guardar.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class Eventos {
+
+	private static final String CATEGORIA = "Centros Universitarios";
+
+	// La clase no se puede instanciar:
+	private Eventos() {
+
+	}
+
+	/**
+	 * Carga de un fichero de la base de datos.
+	 */
+	@Name("centros.Carga")
+	@Label("Carga de fichero")
+	@Category(CATEGORIA)
+	static final class Carga extends Event {
+		@Label("Fichero")
+		String fichero;
+
+		@Label("Registros")
+		int registros;
+
+		@Label("Tamaño")
+		@DataAmount
+		long bytes;
+	}
+
+	/**
+	 * Ejecución de una instrucción de ejecucion.txt.
+	 */
+	@Name("centros.Comando")
+	@Label("Comando")
+	@Category(CATEGORIA)
+	static final class Comando extends Event {
+		@Label("Comando")
+		String comando;
+
+		@Label("Clave")
+		@Description("DNI o siglas del elemento sobre el que actúa el comando")
+		String clave;
+
+		@Label("Resultado")
+		@Description("OK, o las siglas del aviso con el que ha terminado")
+		String resultado;
+	}
+
+	/**
+	 * Escritura de un fichero de la base de datos ({@link Arranque#sobreescribirFichero(java.util.Map)}).
+	 */
+	@Name("centros.Persistencia")
+	@Label("Escritura de fichero")
+	@Category(CATEGORIA)
+	static final class Persistencia extends Event {
+		@Label("Fichero")
+		String fichero;
+
+		@Label("Registros")
+		int registros;
+
+		@Label("Tamaño")
+		@DataAmount
+		long bytes;
+	}
+
+	/**
+	 * Aviso registrado en avisos.txt.
+	 */
+	@Name("centros.Aviso")
+	@Label("Aviso")
+	@Category(CATEGORIA)
+	static final class Aviso extends Event {
+		@Label("Siglas")
+		String siglas;
+
+		@Label("Aviso")
+		String aviso;
+	}
+
+}
@@ -0,0 +1,157 @@
+package docencia;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import modelos.Alumno;
+
+/**
+ * Exportación masiva de expedientes, usada por el comando "Expediente *".
+ * Recorre el mapa de alumnos una sola vez y genera los expedientes en paralelo (ver {@link Alumno#getExpediente()}),
+ * escribiéndolos en un fichero por alumno o en un único fichero conjunto.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class Expedientes {
+
+	/**
+	 * Número de alumnos que se generan en paralelo antes de volcarlos al fichero conjunto.
+	 */
+	private static final int ALUMNOS_POR_BLOQUE = 4096;
+	private static final int TAMANO_BUFFER_SALIDA = 1 << 20;
+
+	// La clase no se puede instanciar:
+	private Expedientes() {
+
+	}
+
+	/**
+	 * Indica si la salida de "Expediente *" es un directorio (un fichero por alumno) o un fichero conjunto.
+	 * Es un directorio si ya existe como tal o si termina en separador de directorios.
+	 * @param salida Nombre de la salida indicada en el comando
+	 * @return true si es un directorio
+	 */
+	public static boolean esDirectorio(String salida) {
+		return salida.endsWith("/") || salida.endsWith(File.separator) || new File(salida).isDirectory();
+	}
+
+	/**
+	 * Escribe el expediente de cada alumno en el fichero DNI.txt del directorio indicado.
+	 * @param alumnos Alumnos a exportar
+	 * @param directorio Directorio de salida. Si no existe, se crea.
+	 * @param hilos Número de hilos que generan y escriben los expedientes
+	 * @throws IOException En caso de error al escribir alguno de los ficheros
+	 */
+	public static void exportarPorAlumno(Alumno[] alumnos, String directorio, int hilos) throws IOException {
+		File carpeta = new File(directorio);
+		carpeta.mkdirs();
+
+		ForkJoinPool pool = new ForkJoinPool(hilos);
+		try {
+			ejecutarEnParalelo(pool, () -> IntStream.range(0, alumnos.length).parallel().forEach(i -> {
+				Alumno alumno = alumnos[i];
+				try {
+					escribir(alumno, new File(carpeta, alumno.getDni() + ".txt"));
+				}catch(IOException e) {
+					throw new ErrorEscritura(e);
+				}
+			}));
+		}finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Escribe los expedientes de todos los alumnos en un único fichero, en el orden del array.
+	 * Cada expediente va precedido del DNI del alumno y separado del siguiente por una línea con *.
+	 * Los expedientes se generan en paralelo por bloques y cada bloque se vuelca a disco en orden.
+	 * @param alumnos Alumnos a exportar
+	 * @param fichero Fichero de salida
+	 * @param hilos Número de hilos que generan los expedientes
+	 * @throws IOException En caso de error al escribir el fichero
+	 */
+	public static void exportarConjunto(Alumno[] alumnos, String fichero, int hilos) throws IOException {
+		String salto = System.lineSeparator();
+		String[] textos = new String[Math.min(ALUMNOS_POR_BLOQUE, alumnos.length)];
+
+		ForkJoinPool pool = new ForkJoinPool(hilos);
+		BufferedWriter bw = new BufferedWriter(new FileWriter(fichero, false), TAMANO_BUFFER_SALIDA);
+		try {
+			for(int inicio = 0; inicio<alumnos.length; inicio += textos.length) {
+				// Genera en paralelo los expedientes del bloque
+				int desde = inicio;
+				int tamano = Math.min(textos.length, alumnos.length - inicio);
+				ejecutarEnParalelo(pool, () -> IntStream.range(0, tamano).parallel()
+						.forEach(i -> textos[i] = alumnos[desde + i].getExpediente()));
+
+				// Y los vuelca en orden
+				for(int i = 0; i<tamano; i++) {
+					if(desde + i>0) bw.write("*" + salto);
+					bw.write(alumnos[desde + i].getDni());
+					bw.write(salto);
+					bw.write(textos[i]);
+				}
+			}
+		}finally {
+			pool.shutdown();
+			bw.close();
+		}
+	}
+
+	/**
+	 * Escribe el expediente de un alumno en un fichero, sobreescribiéndolo si ya existía.
+	 * @param alumno Alumno
+	 * @param fichero Fichero de salida
+	 * @throws IOException En caso de error al escribir el fichero
+	 */
+	public static void escribir(Alumno alumno, File fichero) throws IOException {
+		// El expediente ya está entero en memoria: se escribe de una vez, sin buffer intermedio
+		Writer writer = new OutputStreamWriter(new FileOutputStream(fichero, false));
+		try {
+			writer.write(alumno.getExpediente());
+		}finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Ejecuta una tarea paralela dentro del pool indicado, de forma que use solo sus hilos, y espera a que termine.
+	 * También la usa {@link PlanificadorMatricula}.
+	 */
+	static void ejecutarEnParalelo(ForkJoinPool pool, Runnable tarea) throws IOException {
+		try {
+			pool.submit(tarea).get();
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Tarea paralela interrumpida", e);
+		}catch(ExecutionException e) {
+			if(e.getCause() instanceof ErrorEscritura) throw ((ErrorEscritura) e.getCause()).getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Permite propagar una IOException desde las tareas paralelas.
+	 */
+	private static class ErrorEscritura extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		ErrorEscritura(IOException causa) {
+			super(causa);
+		}
+
+		@Override
+		public synchronized IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+
+}
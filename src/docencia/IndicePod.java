@@ -0,0 +1,136 @@
+package docencia;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import modelos.Asignatura;
+import modelos.Pod;
+
+/**
+ * Índice de las planificaciones docentes (POD) con una clave numérica, para consultarlas sin crear Strings.
+ * La clave empaqueta en un long el DNI del profesor (número y letra), el identificador de la asignatura
+ * (ver {@link Asignatura#getId(String)}) y el tipo de grupo. Las entradas se guardan en una tabla hash
+ * de direccionamiento abierto (sondeo lineal), por lo que una consulta es un único recorrido por arrays primitivos.
+ *
+ * Las entradas con un DNI que no tiene el formato habitual (8 dígitos y una letra mayúscula) o con un tipo de grupo
+ * distinto de A y B no se pueden empaquetar; para ellas se recurre al mapa {@link Arranque#pod}.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class IndicePod {
+
+	private static final long VACIO = -1; // las claves válidas son siempre positivas
+
+	private long[] claves;
+	private Pod[] valores;
+	private int tamano = 0;
+
+	/**
+	 * Crea un índice vacío con capacidad para el número de entradas indicado.
+	 * @param capacidad Número de entradas previsto
+	 */
+	public IndicePod(int capacidad) {
+		int huecos = Integer.highestOneBit(Math.max(capacidad, 8)*2 - 1)*2; // al menos el doble, potencia de 2
+		claves = new long[huecos];
+		valores = new Pod[huecos];
+		Arrays.fill(claves, VACIO);
+	}
+
+	/**
+	 * Crea el índice de todas las planificaciones docentes de un mapa.
+	 * @param pods Planificaciones docentes
+	 * @return El índice
+	 */
+	public static IndicePod crear(Collection<Pod> pods) {
+		IndicePod indice = new IndicePod(pods.size()); // sin redimensionar mientras se llena
+		for(Pod pod: pods) indice.poner(pod);
+		return indice;
+	}
+
+	/**
+	 * Añade (o sustituye) una planificación docente en el índice.
+	 * Si su clave no se puede empaquetar, no se añade: se encontrará en {@link Arranque#pod}.
+	 * @param pod Planificación docente
+	 */
+	public void poner(Pod pod) {
+		long clave = clave(pod.getDni(), Asignatura.getId(pod.getAsignatura()), pod.getTipoGrupo());
+		if(clave==VACIO) return;
+
+		int mascara = claves.length - 1;
+		int h = hash(clave) & mascara;
+		while(claves[h]!=VACIO && claves[h]!=clave) h = (h + 1) & mascara;
+		if(claves[h]==VACIO) tamano++;
+		claves[h] = clave;
+		valores[h] = pod;
+
+		if(tamano*2>claves.length) redimensionar();
+	}
+
+	/**
+	 * Busca la planificación docente de un profesor para una asignatura y un tipo de grupo.
+	 * @param dni DNI del profesor
+	 * @param asignatura Asignatura, ya buscada por quien llama (su identificador no se vuelve a buscar por las siglas)
+	 * @param tipoGrupo A o B
+	 * @return La planificación docente, o null si no existe
+	 */
+	public Pod buscar(String dni, Asignatura asignatura, char tipoGrupo) {
+		long clave = clave(dni, asignatura.getId(), tipoGrupo);
+		if(clave==VACIO) return Arranque.pod.get(dni + asignatura.getSiglas() + tipoGrupo); // no se puede empaquetar
+
+		int mascara = claves.length - 1;
+		for(int h = hash(clave) & mascara; claves[h]!=VACIO; h = (h + 1) & mascara) {
+			if(claves[h]==clave) return valores[h];
+		}
+		return null;
+	}
+
+	/**
+	 * Devuelve el número de entradas del índice.
+	 */
+	public int tamano() {
+		return tamano;
+	}
+
+	/**
+	 * Empaqueta DNI, asignatura y tipo de grupo en un long:
+	 * 27 bits para el número del DNI, 5 para la letra, 24 para la asignatura y 1 para el tipo de grupo.
+	 * @return La clave, o VACIO si no se puede empaquetar
+	 */
+	static long clave(String dni, int idAsignatura, char tipoGrupo) {
+		if(dni.length()!=9 || (tipoGrupo!='A' && tipoGrupo!='B') || idAsignatura>=(1<<24)) return VACIO;
+		long numero = 0;
+		for(int i = 0; i<8; i++) {
+			char c = dni.charAt(i);
+			if(c<'0' || c>'9') return VACIO;
+			numero = numero*10 + (c - '0');
+		}
+		char letra = dni.charAt(8);
+		if(letra<'A' || letra>'Z') return VACIO;
+
+		long dniEmpaquetado = numero << 5 | (letra - 'A');
+		return dniEmpaquetado << 25 | (long) idAsignatura << 1 | (tipoGrupo=='B' ? 1 : 0);
+	}
+
+	private void redimensionar() {
+		long[] clavesAntiguas = claves;
+		Pod[] valoresAntiguos = valores;
+		claves = new long[clavesAntiguas.length*2];
+		valores = new Pod[clavesAntiguas.length*2];
+		Arrays.fill(claves, VACIO);
+
+		int mascara = claves.length - 1;
+		for(int i = 0; i<clavesAntiguas.length; i++) {
+			if(clavesAntiguas[i]==VACIO) continue;
+			int h = hash(clavesAntiguas[i]) & mascara;
+			while(claves[h]!=VACIO) h = (h + 1) & mascara;
+			claves[h] = clavesAntiguas[i];
+			valores[h] = valoresAntiguos[i];
+		}
+	}
+
+	private static int hash(long clave) {
+		long h = clave * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
@@ -0,0 +1,315 @@
+package docencia;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Lector de los ficheros de notas (p.ej. Notas_A.txt, Notas_B.txt) que utiliza el comando "Evalua".
+ * Cada línea del fichero contiene un DNI y una nota separados por espacios.
+ *
+ * El fichero se procesa directamente como bytes, por bloques, sin expresiones regulares ni Strings intermedios:
+ * cada DNI (como máximo 9 caracteres ASCII) se empaqueta en un long y la nota se interpreta con un parser decimal propio.
+ * El resultado es una {@link TablaNotas}, que conserva el orden del fichero y permite buscar la nota de un DNI con una sola consulta.
+ *
+ * Los errores de una línea no impiden leer el resto del fichero, para que el comando "Evalua" los avise línea a línea:
+ * los DNI que no se pueden empaquetar (más largos o con caracteres no ASCII) se guardan como texto,
+ * las notas que no admite el parser propio (p.ej. con 10 o más decimales) se interpretan con Float.parseFloat,
+ * y las que no son un número (o faltan) se guardan como NaN.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class LectorNotas {
+
+	private static final int TAMANO_BLOQUE = 64 * 1024;
+	private static final int LONGITUD_DNI = 9;
+
+	// Potencias de 10 para el parser de decimales
+	private static final double[] POTENCIAS_10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+
+	// La clase no se puede instanciar:
+	private LectorNotas() {
+
+	}
+
+	/**
+	 * Lee un fichero de notas completo.
+	 * Las líneas en blanco se ignoran. Si un mismo DNI aparece varias veces, se queda con la última nota pero conserva la posición de la primera.
+	 * @param fichero Nombre del fichero de notas
+	 * @return Tabla con los pares DNI-nota en el orden del fichero
+	 * @throws IOException En caso de error al leer el fichero o si alguna línea es demasiado larga
+	 */
+	public static TablaNotas leer(String fichero) throws IOException {
+		TablaNotas tabla = new TablaNotas();
+		InputStream entrada = new FileInputStream(fichero);
+		try {
+			byte[] bloque = new byte[TAMANO_BLOQUE];
+			int ocupado = 0; // bytes válidos en el bloque
+			int numeroLinea = 0;
+			int leidos;
+			while((leidos = entrada.read(bloque, ocupado, bloque.length - ocupado)) != -1) {
+				ocupado += leidos;
+
+				// Procesa todas las líneas completas del bloque
+				int inicio = 0;
+				for(int i = 0; i<ocupado; i++) {
+					if(bloque[i]=='\n') {
+						procesarLinea(bloque, inicio, i, ++numeroLinea, tabla);
+						inicio = i + 1;
+					}
+				}
+
+				// La línea incompleta se mueve al principio del bloque
+				if(inicio==0 && ocupado==bloque.length) {
+					throw new IOException("Línea " + (numeroLinea + 1) + " demasiado larga en el fichero " + fichero);
+				}
+				System.arraycopy(bloque, inicio, bloque, 0, ocupado - inicio);
+				ocupado -= inicio;
+			}
+
+			// Última línea, sin salto de línea al final
+			if(ocupado>0) procesarLinea(bloque, 0, ocupado, ++numeroLinea, tabla);
+
+		} finally {
+			entrada.close();
+		}
+		return tabla;
+	}
+
+	/**
+	 * Interpreta una línea del fichero de notas (DNI y nota) y la añade a la tabla.
+	 */
+	private static void procesarLinea(byte[] bytes, int inicio, int fin, int numeroLinea, TablaNotas tabla) {
+		int i = saltarEspacios(bytes, inicio, fin);
+		if(i==fin) return; // línea en blanco
+
+		// DNI: se empaqueta byte a byte
+		int inicioDni = i;
+		long clave = 0;
+		int longitud = 0;
+		boolean empaquetable = true;
+		while(i<fin && !esEspacio(bytes[i])) {
+			byte b = bytes[i++];
+			if(b<=0 || ++longitud>LONGITUD_DNI) empaquetable = false;
+			clave = (clave << 7) | b;
+		}
+		if(empaquetable) {
+			clave <<= 7 * (LONGITUD_DNI - longitud); // alinea los DNI cortos, rellenando con ceros
+		}else {
+			// DNI largo o con caracteres no ASCII: no puede ser el de ningún alumno, pero se avisa en su línea
+			clave = tabla.claveTexto(new String(bytes, inicioDni, i - inicioDni, Charset.defaultCharset()));
+		}
+
+		// Nota: [signo] dígitos [. dígitos]
+		i = saltarEspacios(bytes, i, fin);
+		int inicioNota = i;
+		boolean negativa = false;
+		if(i<fin && (bytes[i]=='-' || bytes[i]=='+')) negativa = bytes[i++]=='-';
+		long mantisa = 0;
+		int digitos = 0, decimales = 0;
+		boolean punto = false, rapida = true;
+		while(i<fin && !esEspacio(bytes[i])) {
+			byte b = bytes[i++];
+			if(b=='.' && !punto) {
+				punto = true;
+			}else if(b>='0' && b<='9' && digitos<18) {
+				mantisa = mantisa*10 + (b - '0');
+				digitos++;
+				if(punto) decimales++;
+			}else {
+				rapida = false;
+			}
+		}
+
+		float nota;
+		if(rapida && digitos>0 && decimales<POTENCIAS_10.length) {
+			nota = (float) (mantisa / POTENCIAS_10[decimales]);
+			if(negativa) nota = -nota;
+		}else {
+			nota = notaLenta(bytes, inicioNota, i);
+		}
+		tabla.poner(clave, nota);
+	}
+
+	/**
+	 * Interpreta con Float.parseFloat una nota que no admite el parser propio (p.ej. con muchos decimales o en notación científica).
+	 * @return La nota, o NaN si no es un número o falta
+	 */
+	private static float notaLenta(byte[] bytes, int inicio, int fin) {
+		try {
+			return Float.parseFloat(new String(bytes, inicio, fin - inicio, StandardCharsets.ISO_8859_1));
+		}catch(NumberFormatException e) {
+			return Float.NaN;
+		}
+	}
+
+	private static int saltarEspacios(byte[] bytes, int i, int fin) {
+		while(i<fin && esEspacio(bytes[i])) i++;
+		return i;
+	}
+
+	// Mismos caracteres que \s en una expresión regular
+	private static boolean esEspacio(byte b) {
+		return b==' ' || b=='\t' || b=='\r' || b=='\n' || b=='\f' || b==0x0B;
+	}
+
+	/**
+	 * Convierte un DNI empaquetado por el lector de nuevo a texto.
+	 * No sirve para los DNI que no se pueden empaquetar, cuya clave es negativa (ver {@link TablaNotas#getDni(int)}).
+	 * @param clave DNI empaquetado
+	 * @return El DNI como cadena de texto
+	 */
+	public static String desempaquetarDNI(long clave) {
+		char[] caracteres = new char[LONGITUD_DNI];
+		int longitud = 0;
+		for(int i = LONGITUD_DNI - 1; i>=0; i--) {
+			char c = (char) ((clave >>> (7*i)) & 0x7F);
+			if(c==0) break;
+			caracteres[longitud++] = c;
+		}
+		return new String(caracteres, 0, longitud);
+	}
+
+	/**
+	 * Conjunto de pares DNI-nota leídos de un fichero de notas.
+	 * Las entradas se guardan en arrays primitivos en el orden del fichero,
+	 * y se indexan con una tabla hash de direccionamiento abierto sobre el DNI empaquetado.
+	 * Los DNI que no se pueden empaquetar reciben una clave negativa propia de la tabla, y su texto se guarda aparte.
+	 * Las notas incorrectas son NaN.
+	 */
+	public static class TablaNotas {
+
+		private long[] claves = new long[16];
+		private float[] notas = new float[16];
+		private int tamano = 0;
+		private int[] indice = new int[32]; // posición + 1 de cada entrada; 0 = hueco libre
+		private HashMap<String, Long> clavesTexto; // DNI que no se pueden empaquetar: clave -(i+1) para el i-ésimo
+		private ArrayList<String> textos;
+
+		TablaNotas() {
+
+		}
+
+		/**
+		 * Devuelve el número de DNI distintos de la tabla.
+		 */
+		public int tamano() {
+			return tamano;
+		}
+
+		/**
+		 * Devuelve el DNI empaquetado de la entrada i-ésima.
+		 */
+		public long getClave(int i) {
+			return claves[i];
+		}
+
+		/**
+		 * Devuelve el DNI de la entrada i-ésima.
+		 */
+		public String getDni(int i) {
+			long clave = claves[i];
+			return clave<0 ? textos.get((int) (-clave - 1)) : desempaquetarDNI(clave);
+		}
+
+		/**
+		 * Devuelve la nota de la entrada i-ésima, o NaN si no es un número.
+		 */
+		public float getNota(int i) {
+			return notas[i];
+		}
+
+		/**
+		 * Busca la nota del DNI de la entrada i-ésima de otra tabla (p.ej. la nota B de un alumno del fichero de notas A).
+		 * @param otra Tabla en la que está el DNI
+		 * @param i Posición del DNI en la otra tabla
+		 * @return La nota, o NaN si el DNI no está en esta tabla
+		 */
+		public float buscarNota(TablaNotas otra, int i) {
+			long clave = otra.claves[i];
+			if(clave<0) {
+				// Las claves de los DNI que no se pueden empaquetar son propias de cada tabla
+				Long propia = clavesTexto!=null ? clavesTexto.get(otra.getDni(i)) : null;
+				if(propia==null) return Float.NaN;
+				clave = propia;
+			}
+			return buscarNota(clave);
+		}
+
+		/**
+		 * Busca la nota de un DNI empaquetado.
+		 * @param clave DNI empaquetado
+		 * @return La nota, o NaN si el DNI no está en la tabla
+		 */
+		public float buscarNota(long clave) {
+			int mascara = indice.length - 1;
+			for(int h = hash(clave) & mascara; indice[h]!=0; h = (h + 1) & mascara) {
+				int posicion = indice[h] - 1;
+				if(claves[posicion]==clave) return notas[posicion];
+			}
+			return Float.NaN;
+		}
+
+		/**
+		 * Clave de un DNI que no se puede empaquetar: negativa, asignada por orden de aparición en esta tabla.
+		 */
+		long claveTexto(String dni) {
+			if(clavesTexto==null) {
+				clavesTexto = new HashMap<String, Long>();
+				textos = new ArrayList<String>();
+			}
+			Long clave = clavesTexto.get(dni);
+			if(clave==null) {
+				textos.add(dni);
+				clave = (long) -textos.size();
+				clavesTexto.put(dni, clave);
+			}
+			return clave;
+		}
+
+		void poner(long clave, float nota) {
+			int mascara = indice.length - 1;
+			int h = hash(clave) & mascara;
+			for(; indice[h]!=0; h = (h + 1) & mascara) {
+				int posicion = indice[h] - 1;
+				if(claves[posicion]==clave) {
+					// DNI repetido: se sobreescribe la nota
+					notas[posicion] = nota;
+					return;
+				}
+			}
+
+			if(tamano==claves.length) {
+				claves = Arrays.copyOf(claves, tamano*2);
+				notas = Arrays.copyOf(notas, tamano*2);
+			}
+			claves[tamano] = clave;
+			notas[tamano] = nota;
+			indice[h] = ++tamano;
+
+			if(tamano*2>indice.length) redimensionar();
+		}
+
+		private void redimensionar() {
+			indice = new int[indice.length*2];
+			int mascara = indice.length - 1;
+			for(int posicion = 0; posicion<tamano; posicion++) {
+				int h = hash(claves[posicion]) & mascara;
+				while(indice[h]!=0) h = (h + 1) & mascara;
+				indice[h] = posicion + 1;
+			}
+		}
+
+		private static int hash(long clave) {
+			long h = clave * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+
+	}
+
+}
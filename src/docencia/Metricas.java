@@ -0,0 +1,270 @@
+package docencia;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Métricas de la ejecución de las instrucciones de ejecucion.txt: para cada tipo de comando, el número de ejecuciones,
+ * cuántas terminan con aviso (por siglas de {@link Errores}) y un histograma de su duración.
+ * El tiempo de escritura de los ficheros ({@link Arranque#sobreescribirFichero(java.util.Map)}) se mide aparte:
+ * de la duración de cada comando se separa la parte de persistencia y la de validación y ejecución en memoria.
+ * Durante un lote los ficheros y los avisos se escriben en segundo plano (ver {@link PersistenciaDiferida}): el tiempo
+ * de cada ronda de escritura se reparte a partes iguales entre los comandos cuyos cambios incluye y se suma a su tiempo
+ * total y de persistencia, pero no a su histograma, que mide lo que tarda cada comando en el hilo que lo ejecuta.
+ *
+ * Los histogramas tienen un cubo por potencia de 2 de nanosegundos, por lo que registrar una medida solo cuesta
+ * dos llamadas a System.nanoTime() y unas pocas sumas. Las métricas se recogen siempre; si se arranca el programa con
+ * -Dcentros.metricas=fichero, al terminar se escribe en ese fichero un resumen en JSON y se muestra otro en texto
+ * por la salida de error.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class Metricas {
+
+	/**
+	 * Fichero en el que se escribe el resumen en JSON, o null si no se escribe.
+	 */
+	public static final String FICHERO = System.getProperty("centros.metricas");
+
+	private static final String DESCONOCIDO = "desconocido";
+	private static final String[] COMANDOS = {"insertapersona", "asignagrupo", "matricula", "creagrupoasig", "evalua",
+			"expediente", "ocupacionaula", "elegibles"};
+	private static final int CUBOS = 64;
+
+	private static final Map<String, Estadisticas> comandos = new ConcurrentHashMap<String, Estadisticas>();
+	private static final Map<String, Estadisticas> persistencia = new ConcurrentHashMap<String, Estadisticas>();
+	private static final Estadisticas carga = new Estadisticas();
+	private static final Estadisticas lote = new Estadisticas();
+
+	// Comando en curso en cada hilo: siglas del primer aviso y tiempo de persistencia acumulado en el propio hilo
+	private static final ThreadLocal<ComandoEnCurso> enCurso = ThreadLocal.withInitial(ComandoEnCurso::new);
+
+	// La clase no se puede instanciar:
+	private Metricas() {
+
+	}
+
+	// REGISTRO:
+
+	/**
+	 * Marca el comienzo de un comando en el hilo actual.
+	 * @return Instante de comienzo, que se pasa a {@link #finComando(String, long)}
+	 */
+	static long inicioComando() {
+		ComandoEnCurso actual = enCurso.get();
+		actual.activo = true;
+		actual.siglas = null;
+		actual.persistencia = 0;
+		return System.nanoTime();
+	}
+
+	/**
+	 * Registra el final de un comando.
+	 * @param comando Nombre del comando (en minúsculas)
+	 * @param inicio Instante de comienzo devuelto por {@link #inicioComando()}
+	 * @return Siglas del aviso con el que ha terminado el comando, o null si no ha habido avisos
+	 */
+	static String finComando(String comando, long inicio) {
+		long duracion = System.nanoTime() - inicio;
+		ComandoEnCurso actual = enCurso.get();
+		actual.activo = false;
+		String clave = esConocido(comando) ? comando : DESCONOCIDO;
+		comandos.computeIfAbsent(clave, c -> new Estadisticas()).registrar(duracion, actual.persistencia, actual.siglas);
+		return actual.siglas;
+	}
+
+	/**
+	 * Registra un aviso del comando en curso. Solo cuenta el primero, ya que es el que aborta el comando.
+	 * @param siglas Siglas del aviso
+	 */
+	static void aviso(String siglas) {
+		ComandoEnCurso actual = enCurso.get();
+		if(actual.siglas==null) actual.siglas = siglas;
+	}
+
+	/**
+	 * Registra la escritura de un fichero de la base de datos. Si se escribe dentro de un comando,
+	 * en el mismo hilo, se suma a su tiempo de persistencia.
+	 * @param fichero Nombre del fichero
+	 * @param duracion Duración en nanosegundos
+	 */
+	static void persistencia(String fichero, long duracion) {
+		ComandoEnCurso actual = enCurso.get();
+		if(actual.activo) actual.persistencia += duracion;
+		persistencia.computeIfAbsent(fichero, f -> new Estadisticas()).registrar(duracion, duracion, null);
+	}
+
+	/**
+	 * Registra la parte de una ronda de escritura en segundo plano que corresponde a un comando ya terminado.
+	 * @param comando Nombre del comando
+	 * @param duracion Duración en nanosegundos
+	 */
+	static void persistenciaDiferida(String comando, long duracion) {
+		String nombre = comando.toLowerCase();
+		String clave = esConocido(nombre) ? nombre : DESCONOCIDO;
+		comandos.computeIfAbsent(clave, c -> new Estadisticas()).sumarPersistencia(duracion);
+	}
+
+	/**
+	 * Registra la carga de la base de datos.
+	 * @param duracion Duración en nanosegundos
+	 */
+	static void carga(long duracion) {
+		carga.registrar(duracion, 0, null);
+	}
+
+	/**
+	 * Registra la ejecución completa del fichero de instrucciones.
+	 * @param duracion Duración en nanosegundos
+	 */
+	static void lote(long duracion) {
+		lote.registrar(duracion, 0, null);
+	}
+
+	// RESUMEN:
+
+	/**
+	 * Escribe el resumen en el fichero indicado con -Dcentros.metricas y por la salida de error.
+	 * No hace nada si no se ha indicado fichero.
+	 */
+	static void escribirResumen() {
+		if(FICHERO==null) return;
+		try {
+			BufferedWriter salida = new BufferedWriter(new FileWriter(FICHERO, false));
+			salida.write(json());
+			salida.close();
+		}catch(IOException e) {
+			System.err.println("Error al escribir las métricas en " + FICHERO + ": " + e.getMessage());
+		}
+		escribirTexto(System.err);
+	}
+
+	/**
+	 * Resumen en JSON: carga, lote, comandos y persistencia, con los tiempos en nanosegundos.
+	 * @return El resumen
+	 */
+	public static String json() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n  \"carga\": ");
+		carga.json(sb, false);
+		sb.append(",\n  \"lote\": ");
+		lote.json(sb, false);
+		sb.append(",\n  \"comandos\": {");
+		jsonMapa(comandos, true, sb);
+		sb.append("},\n  \"persistencia\": {");
+		jsonMapa(persistencia, false, sb);
+		sb.append("}\n}\n");
+		return sb.toString();
+	}
+
+	private static void jsonMapa(Map<String, Estadisticas> mapa, boolean conAvisos, StringBuilder sb) {
+		boolean primero = true;
+		for(Map.Entry<String, Estadisticas> entrada: new TreeMap<String, Estadisticas>(mapa).entrySet()) {
+			sb.append(primero ? "\n    \"" : ",\n    \"").append(entrada.getKey()).append("\": ");
+			entrada.getValue().json(sb, conAvisos);
+			primero = false;
+		}
+		if(!primero) sb.append("\n  ");
+	}
+
+	/**
+	 * Muestra el resumen en forma de tabla, con los tiempos en microsegundos.
+	 * @param salida Salida en la que se escribe
+	 */
+	public static void escribirTexto(PrintStream salida) {
+		salida.printf("%-16s %9s %9s %12s %12s %10s %10s %10s%n", "Comando", "total", "avisos", "ejec. (us)", "persist. (us)",
+				"p50 (us)", "p99 (us)", "max (us)");
+		for(Map.Entry<String, Estadisticas> entrada: new TreeMap<String, Estadisticas>(comandos).entrySet()) {
+			Estadisticas e = entrada.getValue();
+			synchronized(e) {
+				salida.printf("%-16s %9d %9d %12.0f %12.0f %10.1f %10.1f %10.1f%n", entrada.getKey(), e.total, e.avisos,
+						(e.tiempo - e.tiempoPersistencia)/1e3, e.tiempoPersistencia/1e3, e.percentil(0.5)/1e3,
+						e.percentil(0.99)/1e3, e.maximo/1e3);
+			}
+		}
+		salida.printf("Carga: %.1f ms, lote: %.1f ms%n", carga.tiempo/1e6, lote.tiempo/1e6);
+	}
+
+	private static boolean esConocido(String comando) {
+		for(String conocido: COMANDOS) if(conocido.equals(comando)) return true;
+		return false;
+	}
+
+	/**
+	 * Estadísticas acumuladas de un tipo de operación.
+	 */
+	private static class Estadisticas {
+		long total, avisos, tiempo, tiempoPersistencia, maximo;
+		final Map<String, Long> porSiglas = new TreeMap<String, Long>();
+		final long[] histograma = new long[CUBOS]; // cubo i: duraciones en [2^(i-1), 2^i) ns
+
+		synchronized void registrar(long duracion, long duracionPersistencia, String siglas) {
+			total++;
+			tiempo += duracion;
+			tiempoPersistencia += duracionPersistencia;
+			if(duracion>maximo) maximo = duracion;
+			histograma[Math.min(CUBOS - 1, 64 - Long.numberOfLeadingZeros(duracion))]++;
+			if(siglas!=null) {
+				avisos++;
+				porSiglas.merge(siglas, 1L, Long::sum);
+			}
+		}
+
+		/**
+		 * Suma tiempo de persistencia hecho fuera del comando, sin contarlo como una ejecución más.
+		 */
+		synchronized void sumarPersistencia(long duracion) {
+			tiempo += duracion;
+			tiempoPersistencia += duracion;
+		}
+
+		/**
+		 * Percentil aproximado: límite superior del cubo en el que cae.
+		 */
+		long percentil(double p) {
+			long objetivo = (long) Math.ceil(p*total), acumulado = 0;
+			for(int i = 0; i<CUBOS; i++) {
+				acumulado += histograma[i];
+				if(acumulado>=objetivo && acumulado>0) return Math.min(maximo, 1L << i);
+			}
+			return maximo;
+		}
+
+		synchronized void json(StringBuilder sb, boolean conAvisos) {
+			sb.append("{\"total\": ").append(total);
+			if(conAvisos) {
+				sb.append(", \"correctos\": ").append(total - avisos).append(", \"avisos\": {");
+				boolean primero = true;
+				for(Map.Entry<String, Long> entrada: porSiglas.entrySet()) {
+					sb.append(primero ? "\"" : ", \"").append(entrada.getKey()).append("\": ").append(entrada.getValue());
+					primero = false;
+				}
+				sb.append('}');
+			}
+			sb.append(", \"tiempo\": ").append(tiempo);
+			if(conAvisos) {
+				sb.append(", \"tiempoEjecucion\": ").append(tiempo - tiempoPersistencia)
+					.append(", \"tiempoPersistencia\": ").append(tiempoPersistencia);
+			}
+			sb.append(", \"maximo\": ").append(maximo).append(", \"p50\": ").append(percentil(0.5))
+				.append(", \"p90\": ").append(percentil(0.9)).append(", \"p99\": ").append(percentil(0.99))
+				.append(", \"histograma\": [");
+			int ultimo = CUBOS - 1;
+			while(ultimo>0 && histograma[ultimo]==0) ultimo--;
+			for(int i = 0; i<=ultimo; i++) sb.append(i>0 ? ", " : "").append(histograma[i]);
+			sb.append("]}");
+		}
+	}
+
+	private static class ComandoEnCurso {
+		boolean activo;
+		String siglas;
+		long persistencia;
+	}
+
+}
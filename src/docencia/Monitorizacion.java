@@ -0,0 +1,243 @@
+package docencia;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * MBeans de JMX con el estado del programa en ejecución, para poder consultarlo desde jconsole o desde un sistema
+ * de monitorización mientras se ejecuta un lote grande o el servidor de consultas:
+ * <ul>
+ * <li>centros:type=Modelo: número de alumnos, profesores, asignaturas, aulas, entradas del POD, matrículas y grupos
+ * <li>centros:type=Comandos: comandos ejecutados y ritmo actual (comandos por segundo)
+ * <li>centros:type=Persistencia: escrituras de ficheros y duración de la última
+ * </ul>
+ *
+ * Ningún atributo recorre los mapas: los tamaños son los de los propios mapas y las matrículas y grupos se cuentan al cargar
+ * los ficheros y se actualizan en cada comando que los modifica. El ritmo de comandos se calcula una vez por segundo
+ * en un hilo en segundo plano, por lo que consultar los MBeans nunca detiene la ejecución.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class Monitorizacion {
+
+	private static final String DOMINIO = "centros";
+	private static final double PESO_MEDIA = 1 - Math.exp(-1.0/60); // media exponencial de 1 minuto, con una muestra por segundo
+
+	// Contadores del modelo
+	private static final AtomicLong matriculas = new AtomicLong();
+	private static final AtomicLong grupos = new AtomicLong();
+
+	// Comandos
+	private static final LongAdder comandos = new LongAdder();
+	private static volatile double comandosPorSegundo, comandosPorSegundoMedia;
+	private static long comandosMuestra; // total de comandos en la última muestra (solo lo usa el hilo de muestreo)
+
+	// Persistencia
+	private static final LongAdder escrituras = new LongAdder();
+	private static volatile long duracionUltimaEscritura;
+	private static volatile String ficheroUltimaEscritura;
+
+	private static boolean registrado;
+
+	// La clase no se puede instanciar:
+	private Monitorizacion() {
+
+	}
+
+	/**
+	 * Registra los MBeans en el servidor de MBeans de la plataforma y arranca el muestreo del ritmo de comandos.
+	 * Si ya estaban registrados no hace nada. Si no se pueden registrar se avisa por la salida de error y se continúa sin ellos.
+	 */
+	public static synchronized void registrar() {
+		if(registrado) return;
+		registrado = true;
+		try {
+			MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+			servidor.registerMBean(new Modelo(), new ObjectName(DOMINIO + ":type=Modelo"));
+			servidor.registerMBean(new Ejecucion(), new ObjectName(DOMINIO + ":type=Comandos"));
+			servidor.registerMBean(new Persistencia(), new ObjectName(DOMINIO + ":type=Persistencia"));
+		}catch(JMException e) {
+			System.err.println("No se han podido registrar los MBeans: " + e.getMessage());
+			return;
+		}
+
+		ScheduledExecutorService muestreo = Executors.newSingleThreadScheduledExecutor(tarea -> {
+			Thread hilo = new Thread(tarea, "monitorizacion");
+			hilo.setDaemon(true);
+			return hilo;
+		});
+		muestreo.scheduleAtFixedRate(Monitorizacion::muestrear, 1, 1, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Calcula el ritmo de comandos del último segundo y actualiza su media.
+	 */
+	private static void muestrear() {
+		long total = comandos.sum();
+		double ritmo = total - comandosMuestra;
+		comandosMuestra = total;
+		comandosPorSegundo = ritmo;
+		comandosPorSegundoMedia += PESO_MEDIA*(ritmo - comandosPorSegundoMedia);
+	}
+
+	// ACTUALIZACIÓN DE LOS CONTADORES:
+
+	/**
+	 * Fija el número de matrículas tras cargar el fichero de alumnos.
+	 */
+	static void setMatriculas(long numero) {
+		matriculas.set(numero);
+	}
+
+	/**
+	 * Suma (o resta, si es negativo) matrículas tras un comando.
+	 */
+	static void sumarMatriculas(long numero) {
+		matriculas.addAndGet(numero);
+	}
+
+	/**
+	 * Fija el número de grupos tras cargar el fichero de asignaturas.
+	 */
+	static void setGrupos(long numero) {
+		grupos.set(numero);
+	}
+
+	/**
+	 * Suma un grupo nuevo.
+	 */
+	static void sumarGrupo() {
+		grupos.incrementAndGet();
+	}
+
+	/**
+	 * Cuenta un comando ejecutado.
+	 */
+	static void comando() {
+		comandos.increment();
+	}
+
+	/**
+	 * Registra la escritura de un fichero.
+	 * @param fichero Nombre del fichero
+	 * @param duracion Duración en nanosegundos
+	 */
+	static void escritura(String fichero, long duracion) {
+		escrituras.increment();
+		ficheroUltimaEscritura = fichero;
+		duracionUltimaEscritura = duracion;
+	}
+
+	// MBEANS:
+
+	/**
+	 * Tamaño del modelo en memoria.
+	 */
+	public interface ModeloMBean {
+		int getAlumnos();
+		int getProfesores();
+		int getAsignaturas();
+		int getAulas();
+		int getPod();
+		long getMatriculas();
+		long getGrupos();
+	}
+
+	/**
+	 * Comandos ejecutados.
+	 */
+	public interface EjecucionMBean {
+		long getComandosEjecutados();
+		double getComandosPorSegundo();
+		double getComandosPorSegundoMedia1Minuto();
+	}
+
+	/**
+	 * Escrituras de los ficheros de la base de datos.
+	 */
+	public interface PersistenciaMBean {
+		long getEscrituras();
+		double getDuracionUltimaEscrituraMs();
+		String getFicheroUltimaEscritura();
+	}
+
+	public static class Modelo implements ModeloMBean {
+		@Override
+		public int getAlumnos() {
+			return Arranque.alumnos.size();
+		}
+
+		@Override
+		public int getProfesores() {
+			return Arranque.profesores.size();
+		}
+
+		@Override
+		public int getAsignaturas() {
+			return Arranque.asignaturas.size();
+		}
+
+		@Override
+		public int getAulas() {
+			return Arranque.aulas.size();
+		}
+
+		@Override
+		public int getPod() {
+			return Arranque.pod.size();
+		}
+
+		@Override
+		public long getMatriculas() {
+			return matriculas.get();
+		}
+
+		@Override
+		public long getGrupos() {
+			return grupos.get();
+		}
+	}
+
+	public static class Ejecucion implements EjecucionMBean {
+		@Override
+		public long getComandosEjecutados() {
+			return comandos.sum();
+		}
+
+		@Override
+		public double getComandosPorSegundo() {
+			return comandosPorSegundo;
+		}
+
+		@Override
+		public double getComandosPorSegundoMedia1Minuto() {
+			return comandosPorSegundoMedia;
+		}
+	}
+
+	public static class Persistencia implements PersistenciaMBean {
+		@Override
+		public long getEscrituras() {
+			return escrituras.sum();
+		}
+
+		@Override
+		public double getDuracionUltimaEscrituraMs() {
+			return duracionUltimaEscritura/1e6;
+		}
+
+		@Override
+		public String getFicheroUltimaEscritura() {
+			return ficheroUltimaEscritura;
+		}
+	}
+
+}
@@ -0,0 +1,163 @@
+package docencia;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.ToLongFunction;
+
+/**
+ * Perfil de las instrucciones de ejecucion.txt: mide la memoria reservada y el tiempo de CPU de cada línea ejecutada
+ * y, al terminar, muestra por la salida de error las líneas más costosas, para encontrar las instrucciones que provocan
+ * pausas del recolector de basura o que tardan demasiado sin tener que usar un profiler externo.
+ *
+ * Se activa arrancando el programa con -Dcentros.perfil=N, donde N es el número de líneas que se muestran en cada ranking.
+ * Las medidas se toman con el ThreadMXBean de la JVM, por lo que solo están disponibles en HotSpot/OpenJDK.
+ * La escritura de los ficheros se hace en segundo plano (ver {@link PersistenciaDiferida}): lo que reserva y consume
+ * cada ronda de escritura se reparte a partes iguales entre las líneas cuyos cambios incluye.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class PerfilInstrucciones {
+
+	/**
+	 * Número de líneas de cada ranking, 0 si el perfil está desactivado.
+	 */
+	public static final int LINEAS = Integer.getInteger("centros.perfil", 0);
+
+	private final com.sun.management.ThreadMXBean hilos;
+	private final PriorityQueue<Medida> porMemoria = new PriorityQueue<Medida>(Comparator.comparingLong(m -> m.bytes));
+	private final PriorityQueue<Medida> porCpu = new PriorityQueue<Medida>(Comparator.comparingLong(m -> m.cpu));
+	private long totalBytes, totalCpu, lineas;
+
+	// Medida en curso
+	private long bytesInicio, cpuInicio;
+
+	private PerfilInstrucciones(com.sun.management.ThreadMXBean hilos) {
+		this.hilos = hilos;
+	}
+
+	/**
+	 * Crea el perfil si se ha activado y la JVM permite medir la memoria reservada y el tiempo de CPU por hilo.
+	 * @return El perfil, o null si no se va a medir
+	 */
+	static PerfilInstrucciones crear() {
+		if(LINEAS<=0) return null;
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+		com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) bean;
+		if(!hilos.isThreadAllocatedMemorySupported() || !hilos.isCurrentThreadCpuTimeSupported()) {
+			System.err.println("La JVM no permite medir la memoria reservada y el tiempo de CPU por hilo: se desactiva el perfil");
+			return null;
+		}
+		hilos.setThreadAllocatedMemoryEnabled(true);
+		hilos.setThreadCpuTimeEnabled(true);
+		return new PerfilInstrucciones(hilos);
+	}
+
+	/**
+	 * Empieza a medir una línea, en el hilo actual.
+	 */
+	void empezar() {
+		cpuInicio = hilos.getCurrentThreadCpuTime();
+		bytesInicio = hilos.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Termina de medir la línea empezada con {@link #empezar()}. La medida no cuenta hasta que se registra
+	 * con {@link #registrar(Medida)}, para poder sumarle antes la escritura en segundo plano de lo que ha modificado.
+	 * @param linea Línea de ejecucion.txt
+	 * @return La medida de la línea
+	 */
+	Medida terminar(String linea) {
+		long bytes = hilos.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytesInicio;
+		long cpu = hilos.getCurrentThreadCpuTime() - cpuInicio;
+		return new Medida(linea, bytes, cpu);
+	}
+
+	/**
+	 * Registra la medida de una línea.
+	 * @param medida Medida devuelta por {@link #terminar(String)}
+	 */
+	synchronized void registrar(Medida medida) {
+		lineas++;
+		totalBytes += medida.bytes;
+		totalCpu += medida.cpu;
+		anadir(porMemoria, medida, m -> m.bytes);
+		anadir(porCpu, medida, m -> m.cpu);
+	}
+
+	/**
+	 * Tiempo de CPU consumido hasta ahora por el hilo actual, en nanosegundos.
+	 */
+	long cpuHilo() {
+		return hilos.getCurrentThreadCpuTime();
+	}
+
+	/**
+	 * Memoria reservada hasta ahora por el hilo actual, en bytes.
+	 */
+	long bytesHilo() {
+		return hilos.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Mantiene en el montículo las LINEAS medidas mayores (el montículo tiene en la raíz la menor de ellas).
+	 */
+	private static void anadir(PriorityQueue<Medida> mayores, Medida medida, ToLongFunction<Medida> coste) {
+		if(mayores.size()<LINEAS) {
+			mayores.add(medida);
+		}else if(coste.applyAsLong(medida)>coste.applyAsLong(mayores.peek())) {
+			mayores.poll();
+			mayores.add(medida);
+		}
+	}
+
+	/**
+	 * Muestra el total y las líneas que más memoria reservan y más tiempo de CPU consumen, de mayor a menor.
+	 * @param salida Salida en la que se escribe
+	 */
+	synchronized void escribirInforme(PrintStream salida) {
+		salida.printf("Perfil de %d líneas: %,d bytes reservados, %.1f ms de CPU%n", lineas, totalBytes, totalCpu/1e6);
+		salida.println("Líneas que más memoria reservan:");
+		for(Medida medida: ordenadas(porMemoria, Comparator.comparingLong(m -> -m.bytes))) {
+			salida.printf("%,16d bytes %10.3f ms  %s%n", medida.bytes, medida.cpu/1e6, medida.linea);
+		}
+		salida.println("Líneas que más tiempo de CPU consumen:");
+		for(Medida medida: ordenadas(porCpu, Comparator.comparingLong(m -> -m.cpu))) {
+			salida.printf("%,16d bytes %10.3f ms  %s%n", medida.bytes, medida.cpu/1e6, medida.linea);
+		}
+	}
+
+	private static List<Medida> ordenadas(PriorityQueue<Medida> medidas, Comparator<Medida> orden) {
+		List<Medida> lista = new ArrayList<Medida>(medidas);
+		Collections.sort(lista, orden);
+		return lista;
+	}
+
+	/**
+	 * Memoria reservada y tiempo de CPU de una línea, incluida su parte de la escritura en segundo plano.
+	 */
+	static class Medida {
+		final String linea;
+		long bytes, cpu;
+
+		Medida(String linea, long bytes, long cpu) {
+			this.linea = linea;
+			this.bytes = bytes;
+			this.cpu = cpu;
+		}
+
+		/**
+		 * Suma a la línea su parte de una escritura en segundo plano.
+		 */
+		void sumar(long bytes, long cpu) {
+			this.bytes += bytes;
+			this.cpu += cpu;
+		}
+	}
+
+}
@@ -0,0 +1,439 @@
+package docencia;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import modelos.EscribibleEnFichero;
+import modelos.Instantanea;
+
+/**
+ * Etapa de persistencia de la ejecución de un lote (ver {@link EjecucionLote}): escribe en segundo plano los ficheros
+ * de la base de datos que modifican los comandos, los avisos de avisos.txt y el punto de control, mientras el hilo
+ * principal sigue aplicando las instrucciones siguientes.
+ *
+ * Los comandos se aplican de uno en uno con el cerrojo de esta clase. Cuando un comando pide sobreescribir un fichero
+ * solo se anota que está modificado. En cada ronda, el hilo de persistencia toma el cerrojo entre dos comandos, copia la lista
+ * de elementos de los ficheros modificados y abre una {@link Instantanea}; después suelta el cerrojo y convierte a texto
+ * y escribe los elementos mientras los comandos siguen modificando los mapas. Un elemento que se modifica antes de
+ * haberse escrito guarda primero su texto anterior, que es el que se escribe, por lo que cada fichero queda tal como estaba
+ * al sacar la foto sin copiar los modelos ni guardar más texto que el de los elementos modificados durante la escritura.
+ * Si varios comandos modifican el mismo fichero mientras se escribe la ronda anterior, el fichero se escribe una sola vez
+ * con el resultado de todos.
+ * Cada ronda guarda también el punto de control con la última línea incluida en ella, de forma que los ficheros,
+ * los avisos y el punto de control cambian a la vez: si el programa se interrumpe a mitad de una ronda,
+ * al reanudar se terminan o se descartan sus cambios (ver {@link PuntoControl}).
+ * Lo que tarda cada ronda se reparte en {@link Metricas} y en el {@link PerfilInstrucciones} entre las líneas
+ * cuyos cambios incluye (las que han modificado algún fichero o escrito algún aviso, o si no hay ninguna, todas).
+ *
+ * El retraso de la persistencia está acotado: si hay -Dcentros.persistencia.retrasoMaximo=N líneas aplicadas
+ * (1024 por defecto) que han dejado algo por escribir que aún no está en disco (ficheros, avisos o el punto de control),
+ * o demasiados avisos pendientes, el hilo principal espera.
+ * Antes de terminar el programa con System.exit hay que llamar a {@link #sincronizar()} (ver {@link Arranque#salir(int)})
+ * para no perder lo pendiente; si el programa termina de otra forma (p.ej. Ctrl+C) se intenta lo mismo desde un
+ * shutdown hook.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+class PersistenciaDiferida implements Runnable {
+
+	private static final int RETRASO_MAXIMO = Math.max(1, Integer.getInteger("centros.persistencia.retrasoMaximo", 1024));
+	private static final int MAXIMO_AVISOS_PENDIENTES = 1 << 16;
+	private static final long ESPERA_CIERRE_SEGUNDOS = 10; // espera máxima del shutdown hook
+
+	private static volatile PersistenciaDiferida activa;
+
+	private final ReentrantLock cerrojo = new ReentrantLock(true); // justo, para que el hilo de persistencia no espere indefinidamente
+	private final Condition hayTrabajo = cerrojo.newCondition();
+	private final Condition hayEspacio = cerrojo.newCondition();
+	private final ReentrantLock escritura = new ReentrantLock(); // se toma con el cerrojo, para escribir las rondas en orden
+	private final PuntoControl puntoControl;
+	private final PerfilInstrucciones perfil;
+	private final Thread hilo;
+	private final Thread cierre;
+
+	// Protegido por el cerrojo
+	private LinkedHashMap<String, Map<String, ? extends EscribibleEnFichero>> modificados =
+			new LinkedHashMap<String, Map<String, ? extends EscribibleEnFichero>>();
+	private ArrayList<String> avisos = new ArrayList<String>();
+	private int ultimaPosicion = -1;
+	private String ultimaLinea;
+	private boolean posicionPendiente, fin;
+	private int lineasSinEscribir; // líneas aplicadas que han dejado algo por escribir que aún no está en disco
+	private ArrayList<LineaAplicada> lineasPendientes = new ArrayList<LineaAplicada>(); // las mismas, para repartir la escritura
+	private boolean lineaEscribe; // la línea en curso ha modificado algún fichero o escrito algún aviso
+
+	// Solo lo usa quien tiene el cerrojo de escritura
+	private PuntoControl punto;
+	private long longitudAvisos = -1; // longitud de avisos.txt en el último punto de control, -1 si aún no se conoce
+
+	private PersistenciaDiferida(PuntoControl puntoControl, PerfilInstrucciones perfil) {
+		this.puntoControl = puntoControl;
+		this.perfil = perfil;
+		this.punto = puntoControl;
+		this.hilo = new Thread(this, "persistencia");
+		this.hilo.setDaemon(true);
+		this.cierre = new Thread(this::cerrar, "persistencia-cierre");
+	}
+
+	/**
+	 * Arranca la etapa de persistencia: a partir de aquí, las escrituras de ficheros y de avisos se hacen en segundo plano.
+	 * @param puntoControl Punto de control del lote (puede ser null)
+	 * @param perfil Perfil de las instrucciones (puede ser null)
+	 * @return La etapa de persistencia
+	 */
+	static PersistenciaDiferida iniciar(PuntoControl puntoControl, PerfilInstrucciones perfil) {
+		PersistenciaDiferida persistencia = new PersistenciaDiferida(puntoControl, perfil);
+		activa = persistencia;
+		Runtime.getRuntime().addShutdownHook(persistencia.cierre);
+		persistencia.hilo.start();
+		return persistencia;
+	}
+
+	/**
+	 * Etapa de persistencia en marcha, o null si las escrituras se hacen en el momento.
+	 */
+	static PersistenciaDiferida activa() {
+		return activa;
+	}
+
+	/**
+	 * Barrera de cierre: escribe en el momento, en el hilo actual, todo lo pendiente de la etapa de persistencia activa
+	 * (si la hay), esperando antes a que termine la ronda que se esté escribiendo.
+	 * Las escrituras posteriores vuelven a hacerse en el momento.
+	 */
+	static void sincronizar() {
+		PersistenciaDiferida persistencia = activa;
+		if(persistencia==null) return;
+		persistencia.cerrojo.lock();
+		try {
+			persistencia.vaciar();
+		}finally {
+			persistencia.cerrojo.unlock();
+		}
+	}
+
+	/**
+	 * Aplica una instrucción con el cerrojo tomado y anota que es la última aplicada.
+	 * Si la persistencia va demasiado retrasada, antes espera a que se escriba lo pendiente.
+	 * @param posicion Posición de la línea en el fichero de instrucciones
+	 * @param linea Texto de la línea
+	 * @param comando Nombre del comando, para las métricas
+	 * @param ejecucion Ejecución del comando
+	 */
+	void aplicar(int posicion, String linea, String comando, Runnable ejecucion) {
+		cerrojo.lock();
+		try {
+			while(lineasSinEscribir>=RETRASO_MAXIMO || avisos.size()>=MAXIMO_AVISOS_PENDIENTES) {
+				hayTrabajo.signal();
+				hayEspacio.awaitUninterruptibly();
+			}
+			lineaEscribe = false;
+			if(perfil!=null) perfil.empezar();
+			ejecucion.run();
+			PerfilInstrucciones.Medida medida = perfil!=null ? perfil.terminar(linea) : null;
+			ultimaPosicion = posicion;
+			ultimaLinea = linea;
+			if(puntoControl!=null) posicionPendiente = true;
+			if(hayPendientes()) {
+				// Solo cuentan para el retraso las líneas que dejan algo por escribir: si no, el hilo de persistencia
+				// no se despertaría para descontarlas y el hilo principal esperaría indefinidamente
+				lineasSinEscribir++;
+				lineasPendientes.add(new LineaAplicada(comando, medida, lineaEscribe));
+				hayTrabajo.signal();
+			}else if(medida!=null) {
+				perfil.registrar(medida);
+			}
+		}finally {
+			cerrojo.unlock();
+		}
+	}
+
+	/**
+	 * Anota que hay que sobreescribir un fichero con el contenido de un mapa.
+	 * @param fichero Nombre del fichero
+	 * @param mapa Mapa con los elementos a escribir; se convierte a texto más adelante, a partir de una instantánea
+	 */
+	void modificado(String fichero, Map<String, ? extends EscribibleEnFichero> mapa) {
+		cerrojo.lock();
+		try {
+			modificados.put(fichero, mapa);
+			lineaEscribe = true;
+		}finally {
+			cerrojo.unlock();
+		}
+	}
+
+	/**
+	 * Añade un aviso a los pendientes de escribir.
+	 * @param aviso Línea de avisos.txt
+	 */
+	void aviso(String aviso) {
+		cerrojo.lock();
+		try {
+			avisos.add(aviso);
+			lineaEscribe = true;
+		}finally {
+			cerrojo.unlock();
+		}
+	}
+
+	/**
+	 * Espera a que se escriba todo lo pendiente y detiene la etapa de persistencia.
+	 * Las escrituras posteriores vuelven a hacerse en el momento.
+	 */
+	void terminar() {
+		cerrojo.lock();
+		try {
+			fin = true;
+			hayTrabajo.signal();
+		}finally {
+			cerrojo.unlock();
+		}
+		boolean interrumpido = false;
+		while(hilo.isAlive()) {
+			try {
+				hilo.join();
+			}catch(InterruptedException e) {
+				interrumpido = true;
+			}
+		}
+		activa = null;
+		try {
+			Runtime.getRuntime().removeShutdownHook(cierre);
+		}catch(IllegalStateException e) {
+			// La JVM ya se está cerrando
+		}
+		if(interrumpido) Thread.currentThread().interrupt();
+	}
+
+	@Override
+	public void run() {
+		while(true) {
+			// 1. Con el cerrojo: saca la foto de lo pendiente y toma el cerrojo de escritura, para que nadie escriba antes
+			Ronda ronda;
+			cerrojo.lock();
+			try {
+				while(!fin && !hayPendientes()) hayTrabajo.awaitUninterruptibly();
+				if(!hayPendientes()) return;
+				ronda = recoger();
+				escritura.lock();
+			}finally {
+				cerrojo.unlock();
+			}
+
+			// 2. Sin el cerrojo: escribe la ronda mientras se siguen aplicando comandos
+			try {
+				escribir(ronda);
+			}finally {
+				escritura.unlock();
+			}
+
+			// 3. Deja seguir al hilo principal si estaba esperando
+			cerrojo.lock();
+			try {
+				lineasSinEscribir = Math.max(0, lineasSinEscribir - ronda.lineas); // sincronizar() puede haberlo puesto a 0
+				hayEspacio.signalAll();
+			}finally {
+				cerrojo.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Escribe todo lo pendiente en el hilo actual y detiene el hilo de persistencia. Se llama con el cerrojo tomado.
+	 */
+	private void vaciar() {
+		escritura.lock(); // espera a que termine la ronda en curso
+		try {
+			fin = true;
+			if(hayPendientes()) escribir(recoger());
+			lineasSinEscribir = 0;
+		}finally {
+			escritura.unlock();
+		}
+		activa = null;
+		hayTrabajo.signal();
+		hayEspacio.signalAll();
+	}
+
+	/**
+	 * Shutdown hook: si el programa termina sin pasar por {@link #terminar()} ni {@link #sincronizar()}, escribe lo pendiente.
+	 * Si ya se ha hecho (p.ej. el programa ha terminado con {@link Arranque#salir(int)}) no hace nada, aunque un comando
+	 * tenga el cerrojo. Si no, y un comando tiene el cerrojo y no lo suelta (p.ej. porque ha llamado directamente
+	 * a System.exit), se desiste tras unos segundos.
+	 */
+	private void cerrar() {
+		if(activa!=this) return; // ya se ha escrito todo con terminar() o sincronizar()
+		try {
+			if(!cerrojo.tryLock(ESPERA_CIERRE_SEGUNDOS, TimeUnit.SECONDS)) {
+				System.err.println("No se han podido escribir los cambios pendientes al terminar el programa");
+				return;
+			}
+		}catch(InterruptedException e) {
+			return;
+		}
+		try {
+			if(activa==this) vaciar();
+		}finally {
+			cerrojo.unlock();
+		}
+	}
+
+	/**
+	 * Indica si hay algo que escribir. Se llama con el cerrojo tomado.
+	 */
+	private boolean hayPendientes() {
+		return !modificados.isEmpty() || !avisos.isEmpty() || posicionPendiente;
+	}
+
+	/**
+	 * Saca la foto de lo pendiente: los avisos, los elementos de los ficheros modificados y la última línea aplicada.
+	 * Si hay ficheros abre una instantánea, para que los elementos que se modifiquen mientras se escriben guarden antes su texto.
+	 * Se llama con el cerrojo tomado, entre dos comandos.
+	 */
+	private Ronda recoger() {
+		Ronda ronda = new Ronda();
+		ronda.avisos = avisos;
+		avisos = new ArrayList<String>();
+		for(Map.Entry<String, Map<String, ? extends EscribibleEnFichero>> entrada: modificados.entrySet()) {
+			ronda.ficheros.add(new Fichero(entrada.getKey(), entrada.getValue().values().toArray(new EscribibleEnFichero[0])));
+		}
+		modificados.clear();
+		if(!ronda.ficheros.isEmpty()) ronda.instantanea = Instantanea.abrir();
+		ronda.posicion = ultimaPosicion;
+		ronda.linea = ultimaLinea;
+		ronda.lineas = lineasSinEscribir;
+		ronda.aplicadas = lineasPendientes;
+		lineasPendientes = new ArrayList<LineaAplicada>();
+		posicionPendiente = false;
+		return ronda;
+	}
+
+	/**
+	 * Escribe una ronda y reparte lo que ha costado entre las líneas que incluye. Se llama con el cerrojo de escritura tomado.
+	 * Los avisos y los ficheros temporales se escriben y se sincronizan con el disco antes de guardar el punto de control,
+	 * que incluye los ficheros pendientes de sustituir; después se sustituyen y se vuelve a guardar el punto de control
+	 * sin pendientes (ver {@link PuntoControl}).
+	 */
+	private void escribir(Ronda ronda) {
+		long inicio = System.nanoTime();
+		long cpuInicio = perfil!=null ? perfil.cpuHilo() : 0, bytesInicio = perfil!=null ? perfil.bytesHilo() : 0;
+		try {
+			if(!ronda.avisos.isEmpty()) Errores.escribirAvisos(ronda.avisos);
+			List<String> pendientes = new ArrayList<String>();
+			try {
+				for(Fichero fichero: ronda.ficheros) {
+					if(Arranque.escribirTemporal(fichero.nombre, fichero.elementos, ronda.instantanea)) pendientes.add(fichero.nombre);
+				}
+			}finally {
+				if(ronda.instantanea!=null) Instantanea.cerrar();
+			}
+			if(punto!=null && ronda.posicion>=0) {
+				try {
+					if(!ronda.avisos.isEmpty() || longitudAvisos<0) longitudAvisos = Errores.sincronizarAvisos();
+					punto.guardar(ronda.posicion, ronda.linea, longitudAvisos, pendientes);
+				}catch(IOException e) {
+					errorPuntoControl();
+				}
+			}
+			boolean sustituidos = true;
+			for(String fichero: pendientes) {
+				try {
+					PuntoControl.sustituir(fichero);
+				}catch(IOException e) {
+					System.out.println("Error inesperado al escribir en el fichero " + fichero);
+					e.printStackTrace();
+					sustituidos = false; // se queda pendiente en el punto de control, para sustituirlo al reanudar
+				}
+			}
+			if(punto!=null && ronda.posicion>=0 && !pendientes.isEmpty() && sustituidos) {
+				try {
+					punto.guardar(ronda.posicion, ronda.linea, longitudAvisos, Collections.<String>emptyList());
+				}catch(IOException e) {
+					errorPuntoControl();
+				}
+			}
+		}catch(RuntimeException e) {
+			// Un error en una ronda no debe detener las siguientes
+			e.printStackTrace();
+		}
+		long duracion = System.nanoTime() - inicio;
+		long cpu = perfil!=null ? perfil.cpuHilo() - cpuInicio : 0, bytes = perfil!=null ? perfil.bytesHilo() - bytesInicio : 0;
+		repartir(ronda.aplicadas, duracion, cpu, bytes);
+	}
+
+	private void errorPuntoControl() {
+		System.out.println("Error al escribir en el fichero " + PuntoControl.FICHERO + ". Se continúa sin punto de control.");
+		punto = null;
+	}
+
+	/**
+	 * Reparte a partes iguales lo que ha costado escribir una ronda entre las líneas que han modificado algún fichero
+	 * o escrito algún aviso o, si no hay ninguna (solo se ha escrito el punto de control), entre todas,
+	 * y registra en el perfil las medidas de las líneas de la ronda.
+	 */
+	private void repartir(List<LineaAplicada> aplicadas, long duracion, long cpu, long bytes) {
+		if(aplicadas.isEmpty()) return;
+		int participantes = 0;
+		for(LineaAplicada aplicada: aplicadas) if(aplicada.escribe) participantes++;
+		boolean todas = participantes==0;
+		if(todas) participantes = aplicadas.size();
+		for(LineaAplicada aplicada: aplicadas) {
+			if(!todas && !aplicada.escribe) continue;
+			Metricas.persistenciaDiferida(aplicada.comando, duracion/participantes);
+			if(aplicada.medida!=null) aplicada.medida.sumar(bytes/participantes, cpu/participantes);
+		}
+		if(perfil!=null) {
+			for(LineaAplicada aplicada: aplicadas) perfil.registrar(aplicada.medida);
+		}
+	}
+
+	/**
+	 * Lo que se escribe en una ronda.
+	 */
+	private static class Ronda {
+		List<String> avisos;
+		final List<Fichero> ficheros = new ArrayList<Fichero>();
+		int posicion;
+		String linea;
+		int lineas; // líneas aplicadas que quedan escritas con esta ronda
+		List<LineaAplicada> aplicadas; // las mismas, para repartir lo que cuesta escribirla
+		Instantanea instantanea; // null si no hay ficheros
+	}
+
+	/**
+	 * Línea aplicada que ha dejado algo por escribir.
+	 */
+	private static class LineaAplicada {
+		final String comando;
+		final PerfilInstrucciones.Medida medida; // null si no se está midiendo el perfil
+		final boolean escribe; // ha modificado algún fichero o escrito algún aviso (si no, solo el punto de control)
+
+		LineaAplicada(String comando, PerfilInstrucciones.Medida medida, boolean escribe) {
+			this.comando = comando;
+			this.medida = medida;
+			this.escribe = escribe;
+		}
+	}
+
+	/**
+	 * Foto de un fichero pendiente de escribir: sus elementos en el momento de abrir la instantánea.
+	 */
+	private static class Fichero {
+		final String nombre;
+		final EscribibleEnFichero[] elementos;
+
+		Fichero(String nombre, EscribibleEnFichero[] elementos) {
+			this.nombre = nombre;
+			this.elementos = elementos;
+		}
+	}
+
+}
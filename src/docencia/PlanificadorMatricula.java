@@ -0,0 +1,151 @@
+package docencia;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import modelos.Alumno;
+import modelos.Asignatura;
+
+/**
+ * Planificador de matrícula: calcula, para cada alumno y cada asignatura, si el comando "Matricula" se aceptaría,
+ * sin ejecutar ningún comando ni modificar los ficheros.
+ * Usa los mismos criterios y en el mismo orden que el comando: primero si el alumno ya está matriculado
+ * y después si cumple los prerrequisitos (ver {@link Alumno#estaMatriculado(String)} y {@link Alumno#cumplePrerrequisitos(Asignatura)}).
+ *
+ * La matriz se calcula en paralelo por bloques de alumnos, y cada bloque se entrega en orden a una {@link Salida}
+ * en cuanto está listo, de forma que nunca está entera en memoria.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class PlanificadorMatricula {
+
+	/**
+	 * El alumno se puede matricular en la asignatura.
+	 */
+	public static final char ELEGIBLE = 'S';
+
+	/**
+	 * El alumno ya está matriculado en la asignatura ("Ya es alumno de la asignatura indicada").
+	 */
+	public static final char YA_MATRICULADO = 'M';
+
+	/**
+	 * El alumno no ha superado todos los prerrequisitos de la asignatura ("No cumple requisitos").
+	 */
+	public static final char NO_CUMPLE_REQUISITOS = 'N';
+
+	private static final int ALUMNOS_POR_BLOQUE = 4096;
+	private static final int TAMANO_BUFFER_SALIDA = 1 << 20;
+
+	// La clase no se puede instanciar:
+	private PlanificadorMatricula() {
+
+	}
+
+	/**
+	 * Receptor de las filas de la matriz de elegibilidad, que se entregan en el orden del array de alumnos.
+	 */
+	public interface Salida {
+		/**
+		 * Recibe la fila de un alumno.
+		 * @param alumno Alumno
+		 * @param resultados Resultado para cada asignatura, en el orden del array de asignaturas.
+		 * El array se reutiliza: solo es válido durante la llamada.
+		 * @throws IOException En caso de error al escribir la fila
+		 */
+		void fila(Alumno alumno, char[] resultados) throws IOException;
+	}
+
+	/**
+	 * Calcula si un alumno se puede matricular en una asignatura.
+	 * @param alumno Alumno
+	 * @param asignatura Asignatura
+	 * @return {@link #ELEGIBLE}, {@link #YA_MATRICULADO} o {@link #NO_CUMPLE_REQUISITOS}
+	 */
+	public static char evaluar(Alumno alumno, Asignatura asignatura) {
+		if(alumno.estaMatriculado(asignatura.getSiglas())) return YA_MATRICULADO;
+		if(!alumno.cumplePrerrequisitos(asignatura)) return NO_CUMPLE_REQUISITOS;
+		return ELEGIBLE;
+	}
+
+	/**
+	 * Calcula la matriz de elegibilidad completa y la entrega fila a fila, en orden.
+	 * @param alumnos Alumnos (filas)
+	 * @param asignaturas Asignaturas (columnas)
+	 * @param hilos Número de hilos que calculan la matriz
+	 * @param salida Receptor de las filas
+	 * @throws IOException En caso de error en la salida
+	 */
+	public static void calcular(Alumno[] alumnos, Asignatura[] asignaturas, int hilos, Salida salida) throws IOException {
+		char[][] filas = new char[Math.min(ALUMNOS_POR_BLOQUE, alumnos.length)][asignaturas.length];
+
+		ForkJoinPool pool = new ForkJoinPool(hilos);
+		try {
+			for(int inicio = 0; inicio<alumnos.length; inicio += filas.length) {
+				// Calcula en paralelo las filas del bloque
+				int desde = inicio;
+				int tamano = Math.min(filas.length, alumnos.length - inicio);
+				Expedientes.ejecutarEnParalelo(pool, () -> IntStream.range(0, tamano).parallel().forEach(i -> {
+					Alumno alumno = alumnos[desde + i];
+					char[] fila = filas[i];
+					for(int j = 0; j<asignaturas.length; j++) fila[j] = evaluar(alumno, asignaturas[j]);
+				}));
+
+				// Y las entrega en orden
+				for(int i = 0; i<tamano; i++) salida.fila(alumnos[desde + i], filas[i]);
+			}
+		}finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Escribe la matriz de elegibilidad en formato CSV: una cabecera con "dni" y las siglas de las asignaturas,
+	 * y una línea por alumno con su DNI y el resultado de cada asignatura.
+	 * @param alumnos Alumnos (filas)
+	 * @param asignaturas Asignaturas (columnas)
+	 * @param hilos Número de hilos que calculan la matriz
+	 * @param salida Destino del CSV. No se cierra.
+	 * @throws IOException En caso de error al escribir
+	 */
+	public static void escribirCsv(Alumno[] alumnos, Asignatura[] asignaturas, int hilos, Writer salida) throws IOException {
+		String salto = System.lineSeparator();
+		salida.write("dni");
+		for(Asignatura asignatura: asignaturas) {
+			salida.write(',');
+			salida.write(asignatura.getSiglas());
+		}
+		salida.write(salto);
+
+		calcular(alumnos, asignaturas, hilos, (alumno, resultados) -> {
+			salida.write(alumno.getDni());
+			for(char resultado: resultados) {
+				salida.write(',');
+				salida.write(resultado);
+			}
+			salida.write(salto);
+		});
+	}
+
+	/**
+	 * Escribe en un fichero CSV la matriz de elegibilidad de todos los alumnos y asignaturas cargados.
+	 * @param fichero Fichero de salida
+	 * @param hilos Número de hilos que calculan la matriz
+	 * @throws IOException En caso de error al escribir el fichero
+	 */
+	public static void exportar(String fichero, int hilos) throws IOException {
+		Alumno[] alumnos = Arranque.alumnos.values().toArray(new Alumno[0]);
+		Asignatura[] asignaturas = Arranque.asignaturas.values().toArray(new Asignatura[0]);
+		BufferedWriter bw = new BufferedWriter(new FileWriter(fichero, false), TAMANO_BUFFER_SALIDA);
+		try {
+			escribirCsv(alumnos, asignaturas, hilos, bw);
+		}finally {
+			bw.close();
+		}
+	}
+
+}
@@ -0,0 +1,248 @@
+package docencia;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Punto de control de la ejecución de ejecucion.txt, para poder reanudar un lote que se ha interrumpido
+ * sin volver a ejecutar (ni a generar los avisos de) las líneas ya aplicadas.
+ *
+ * Se guarda en el fichero ejecucion.puntoControl (en el directorio actual, junto a los ficheros que escriben los comandos)
+ * el resumen SHA-256 de ejecucion.txt, la posición y el número de la última línea aplicada, los ficheros de la base de datos
+ * que se han escrito desde el comienzo del lote y la longitud de avisos.txt. Se guarda en un fichero temporal,
+ * que se sincroniza con el disco y se renombra de forma atómica sobre el anterior, por lo que el punto de control siempre
+ * está completo. Al terminar el lote correctamente se borra.
+ *
+ * Lo guarda la etapa de persistencia ({@link PersistenciaDiferida}) en cada ronda, de forma que los datos y el punto de control
+ * cambian a la vez: primero añade los avisos y escribe los ficheros modificados en ficheros temporales, todo ello sincronizado
+ * con el disco; después guarda el punto de control con los ficheros que quedan por sustituir (los pendientes),
+ * renombra los temporales sobre los ficheros y vuelve a guardar el punto de control sin pendientes.
+ * Si el programa se interrumpe antes de guardar el punto de control, los temporales se descartan; si es después,
+ * al arrancar se terminan de renombrar los que falten. Los avisos que pasan de la longitud guardada también se descartan,
+ * ya que son de líneas que se vuelven a ejecutar.
+ *
+ * Al arrancar, si existe un punto de control del mismo ejecucion.txt, la ejecución se reanuda tras la última línea aplicada
+ * y los ficheros escritos por el lote interrumpido se cargan del directorio actual en lugar del directorio de datos.
+ * Se usa la posición de la línea y no su número porque los números de línea de ejecucion.txt se pueden repetir.
+ * Las líneas aplicadas después del último punto de control guardado se vuelven a ejecutar.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class PuntoControl {
+
+	/**
+	 * Fichero del punto de control.
+	 */
+	public static final String FICHERO = "ejecucion.puntoControl";
+
+	private final String resumen;
+	private final int reanudarTras; // posición de la última línea aplicada en la ejecución anterior, -1 si no se reanuda
+	private final Set<String> ficherosEscritos = new LinkedHashSet<String>();
+	private final Set<String> ficherosReanudacion;
+
+	private PuntoControl(String resumen, int reanudarTras, Set<String> ficherosReanudacion) {
+		this.resumen = resumen;
+		this.reanudarTras = reanudarTras;
+		this.ficherosReanudacion = ficherosReanudacion;
+		this.ficherosEscritos.addAll(ficherosReanudacion);
+	}
+
+	/**
+	 * Abre el punto de control para el fichero de instrucciones: si hay uno guardado del mismo fichero, se reanuda;
+	 * si es de otro fichero (o de otra versión del mismo), se avisa y se empieza desde el principio.
+	 * @param ficheroInstrucciones Fichero ejecucion.txt
+	 * @return El punto de control
+	 * @throws IOException En caso de error al leer alguno de los ficheros
+	 */
+	static PuntoControl abrir(String ficheroInstrucciones) throws IOException {
+		String resumen = resumen(ficheroInstrucciones);
+		Path guardado = Paths.get(FICHERO);
+		if(!Files.exists(guardado)) return new PuntoControl(resumen, -1, Collections.<String>emptySet());
+
+		String resumenGuardado = null, numero = null;
+		int posicion = -1;
+		long longitudAvisos = -1;
+		Set<String> ficheros = new LinkedHashSet<String>();
+		List<String> pendientes = new ArrayList<String>();
+		BufferedReader lectura = new BufferedReader(new FileReader(FICHERO));
+		try {
+			String linea;
+			while((linea = lectura.readLine())!=null) {
+				String[] campos = linea.split(" ", 2);
+				if(campos.length<2) continue;
+				switch(campos[0]) {
+				case "sha256": resumenGuardado = campos[1]; break;
+				case "posicion": posicion = Integer.parseInt(campos[1]); break;
+				case "linea": numero = campos[1]; break;
+				case "ficheros": ficheros.addAll(Arrays.asList(campos[1].split(";"))); break;
+				case "avisos": longitudAvisos = Long.parseLong(campos[1]); break;
+				case "pendientes": pendientes.addAll(Arrays.asList(campos[1].split(";"))); break;
+				default: break;
+				}
+			}
+		}finally {
+			lectura.close();
+		}
+
+		if(!resumen.equals(resumenGuardado) || posicion<0) {
+			// Se descartan los ficheros que quedaron por sustituir
+			for(String fichero: pendientes) Files.deleteIfExists(Paths.get(fichero + ".tmp"));
+			System.out.println("El punto de control " + FICHERO + " no corresponde a " + ficheroInstrucciones
+					+ ". Se ejecuta desde el principio.");
+			return new PuntoControl(resumen, -1, Collections.<String>emptySet());
+		}
+		// La ronda interrumpida ya había guardado el punto de control: se terminan de sustituir sus ficheros
+		for(String fichero: pendientes) {
+			if(Files.exists(Paths.get(fichero + ".tmp"))) sustituir(fichero);
+		}
+		// Los avisos escritos después del punto de control se vuelven a escribir al ejecutar de nuevo sus líneas
+		if(longitudAvisos>=0) Errores.recortarAvisos(longitudAvisos);
+		System.out.println("Se reanuda la ejecución tras la línea " + numero + " (" + FICHERO + ")");
+		return new PuntoControl(resumen, posicion, ficheros);
+	}
+
+	/**
+	 * Indica si una línea ya se aplicó en la ejecución interrumpida.
+	 * @param posicion Posición de la línea en el fichero (sin contar las líneas en blanco)
+	 */
+	boolean yaAplicada(int posicion) {
+		return posicion<=reanudarTras;
+	}
+
+	/**
+	 * Indica si un fichero de la base de datos se debe cargar del directorio actual, porque lo escribió el lote interrumpido.
+	 * @param fichero Nombre del fichero, sin directorio
+	 */
+	boolean escritoAlInterrumpirse(String fichero) {
+		return ficherosReanudacion.contains(fichero);
+	}
+
+	/**
+	 * Anota que se ha escrito un fichero de la base de datos.
+	 * @param fichero Nombre del fichero
+	 */
+	void ficheroEscrito(String fichero) {
+		ficherosEscritos.add(fichero);
+	}
+
+	/**
+	 * Termina el lote correctamente, borrando el punto de control.
+	 * @throws IOException En caso de error al borrar el fichero
+	 */
+	void terminar() throws IOException {
+		Files.deleteIfExists(Paths.get(FICHERO));
+	}
+
+	/**
+	 * Guarda el punto de control con la última línea aplicada: fichero temporal, sincronización con el disco y renombrado atómico.
+	 * Los ficheros pendientes ya se deben haber escrito y sincronizado con el disco en sus ficheros temporales,
+	 * y se deben sustituir después con {@link #sustituir(String)}.
+	 * @param posicion Posición de la línea en el fichero
+	 * @param linea Texto de la línea
+	 * @param longitudAvisos Longitud de avisos.txt tras los avisos de la línea, ya sincronizado con el disco
+	 * @param pendientes Ficheros escritos en ficheros temporales que aún no se han sustituido
+	 * @throws IOException En caso de error al guardar
+	 */
+	void guardar(int posicion, String linea, long longitudAvisos, List<String> pendientes) throws IOException {
+		ficherosEscritos.addAll(pendientes);
+		int espacio = linea.indexOf(' ');
+		StringBuilder sb = new StringBuilder();
+		sb.append("sha256 ").append(resumen).append('\n');
+		sb.append("posicion ").append(posicion).append('\n');
+		sb.append("linea ").append(espacio>0 ? linea.substring(0, espacio) : linea).append('\n');
+		sb.append("avisos ").append(longitudAvisos).append('\n');
+		if(!ficherosEscritos.isEmpty()) sb.append("ficheros ").append(String.join(";", ficherosEscritos)).append('\n');
+		if(!pendientes.isEmpty()) sb.append("pendientes ").append(String.join(";", pendientes)).append('\n');
+
+		Path temporal = Paths.get(FICHERO + ".tmp");
+		FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer datos = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+			while(datos.hasRemaining()) canal.write(datos);
+			canal.force(true);
+		}finally {
+			canal.close();
+		}
+		renombrar(temporal, Paths.get(FICHERO));
+		sincronizarDirectorio();
+	}
+
+	/**
+	 * Sustituye un fichero por su fichero temporal (el nombre del fichero seguido de .tmp), con un renombrado atómico.
+	 * @param fichero Nombre del fichero
+	 * @throws IOException En caso de error al renombrar
+	 */
+	static void sustituir(String fichero) throws IOException {
+		renombrar(Paths.get(fichero + ".tmp"), Paths.get(fichero));
+	}
+
+	private static void renombrar(Path temporal, Path destino) throws IOException {
+		try {
+			Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}catch(AtomicMoveNotSupportedException e) {
+			Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Sincroniza con el disco el directorio actual, para que los renombrados anteriores no se pierdan.
+	 * No todos los sistemas permiten abrir un directorio (p.ej. Windows): en ese caso no se hace nada.
+	 */
+	private static void sincronizarDirectorio() {
+		try {
+			FileChannel canal = FileChannel.open(Paths.get("."), StandardOpenOption.READ);
+			try {
+				canal.force(true);
+			}finally {
+				canal.close();
+			}
+		}catch(IOException e) {
+			// No se puede sincronizar el directorio
+		}
+	}
+
+	/**
+	 * Resumen SHA-256 de un fichero, en hexadecimal.
+	 */
+	private static String resumen(String fichero) throws IOException {
+		MessageDigest sha;
+		try {
+			sha = MessageDigest.getInstance("SHA-256");
+		}catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // todas las JVM tienen SHA-256
+		}
+		byte[] buffer = new byte[1 << 16];
+		InputStream entrada = new FileInputStream(fichero);
+		try {
+			int leidos;
+			while((leidos = entrada.read(buffer))>0) sha.update(buffer, 0, leidos);
+		}finally {
+			entrada.close();
+		}
+		StringBuilder sb = new StringBuilder();
+		for(byte b: sha.digest()) sb.append(String.format("%02x", b));
+		return sb.toString();
+	}
+
+}
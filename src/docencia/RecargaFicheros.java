@@ -0,0 +1,89 @@
+package docencia;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vigila el directorio de la base de datos y recarga cada fichero que cambie, sin reiniciar el programa
+ * ni volver a leer los demás (ver {@link Arranque#recargarFichero(String)}).
+ * Se usa en los procesos de larga duración, como el servidor de consultas.
+ *
+ * Los editores suelen escribir un fichero en varias operaciones, por lo que tras el primer cambio se espera
+ * un breve intervalo y se agrupan todos los cambios recibidos, recargando cada fichero una sola vez.
+ * Los mensajes se escriben en la salida de error, para no mezclarse con las respuestas del servidor.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class RecargaFicheros implements Runnable {
+
+	private static final long ESPERA_CAMBIOS_MS = 200;
+
+	private final Path directorio;
+	private final WatchService vigilante;
+
+	private RecargaFicheros(Path directorio) throws IOException {
+		this.directorio = directorio;
+		this.vigilante = FileSystems.getDefault().newWatchService();
+		directorio.register(vigilante, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+	}
+
+	/**
+	 * Empieza a vigilar el directorio de la base de datos en un hilo en segundo plano.
+	 * @return El hilo que vigila los ficheros
+	 * @throws IOException En caso de error al registrar el directorio
+	 */
+	public static Thread iniciar() throws IOException {
+		Thread hilo = new Thread(new RecargaFicheros(Paths.get(Arranque.DIRECTORIO_DATOS)), "recarga-ficheros");
+		hilo.setDaemon(true);
+		hilo.start();
+		return hilo;
+	}
+
+	@Override
+	public void run() {
+		try {
+			while(true) {
+				// Espera al primer cambio y recoge los que lleguen a continuación
+				Set<String> cambiados = new LinkedHashSet<String>();
+				WatchKey clave = vigilante.take();
+				do {
+					for(WatchEvent<?> evento: clave.pollEvents()) {
+						if(evento.kind()==StandardWatchEventKinds.OVERFLOW) continue;
+						cambiados.add(((Path) evento.context()).getFileName().toString());
+					}
+					if(!clave.reset()) return; // el directorio ya no existe
+				}while((clave = vigilante.poll(ESPERA_CAMBIOS_MS, TimeUnit.MILLISECONDS))!=null);
+
+				for(String fichero: cambiados) recargar(fichero);
+			}
+		}catch(InterruptedException | ClosedWatchServiceException e) {
+			// Fin de la vigilancia
+		}finally {
+			try {
+				vigilante.close();
+			}catch(IOException e) {
+				// Ya estaba cerrado
+			}
+		}
+	}
+
+	private void recargar(String fichero) {
+		try {
+			if(Arranque.recargarFichero(fichero)) System.err.println("Recargado el fichero " + directorio.resolve(fichero));
+		}catch(Exception e) {
+			// Fichero incompleto o incorrecto: se mantienen los datos anteriores hasta el siguiente cambio
+			System.err.println("Error al recargar el fichero " + directorio.resolve(fichero) + ": " + e);
+		}
+	}
+
+}
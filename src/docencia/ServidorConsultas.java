@@ -0,0 +1,282 @@
+package docencia;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import modelos.Alumno;
+import modelos.Asignatura;
+import modelos.Aula;
+import modelos.CalendarioOcupacion;
+
+/**
+ * Servidor de consultas: modo de ejecución que carga la base de datos una sola vez y responde consultas de solo lectura
+ * sobre los mapas en memoria, sin ejecutar el fichero ejecucion.txt ni modificar ningún fichero.
+ * Se arranca con "CentrosUniversitarios servidor [puerto]": con puerto escucha conexiones en localhost;
+ * sin puerto lee las consultas de la entrada estándar y responde por la salida estándar.
+ *
+ * Protocolo: cada consulta es una línea con el mismo formato que los comandos de ejecucion.txt, pero sin número de línea.
+ * La respuesta son cero o más líneas de texto terminadas con una línea que contiene solo un punto.
+ * Las líneas de la respuesta que empiezan por punto se envían con un punto más delante (como en SMTP).
+ * Los errores se responden con una línea "ERROR " seguida del mismo aviso que se guardaría en avisos.txt.
+ * Consultas disponibles:
+ * <ul>
+ * <li>Expediente dni
+ * <li>OcupacionAula aula|* [texto|csv|json]
+ * <li>Elegibles [dni]
+ * <li>Salir (cierra la conexión)
+ * </ul>
+ *
+ * Cada conexión se atiende en un hilo de un pool de tamaño fijo (-Dcentros.servidor.hilos, por defecto 32).
+ * Si se modifica algún fichero de la base de datos mientras el servidor está en marcha, se recarga (ver {@link RecargaFicheros}).
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class ServidorConsultas {
+
+	private static final String FIN_RESPUESTA = ".";
+	private static final int HILOS = Integer.getInteger("centros.servidor.hilos", 32);
+
+	// La clase no se puede instanciar:
+	private ServidorConsultas() {
+
+	}
+
+	/**
+	 * Carga la base de datos y atiende consultas hasta que se cierre la entrada estándar o se termine el proceso.
+	 * @param args Argumentos del modo servidor: opcionalmente, el puerto en el que escuchar
+	 */
+	public static void iniciar(String[] args) {
+		Monitorizacion.registrar();
+		Arranque.cargarBaseDeDatos();
+		try {
+			// Los ficheros que se modifiquen mientras el servidor está en marcha se recargan automáticamente
+			RecargaFicheros.iniciar();
+			
+			if(args.length==0) {
+				atender(new BufferedReader(new InputStreamReader(System.in)), new OutputStreamWriter(System.out));
+			}else {
+				escuchar(Integer.parseInt(args[0]));
+			}
+		}catch(NumberFormatException e) {
+			System.out.println("Puerto incorrecto: " + args[0]);
+		}catch(IOException e) {
+			System.out.println("Error en el servidor de consultas: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Escucha conexiones en localhost y atiende cada una en un hilo del pool.
+	 */
+	private static void escuchar(int puerto) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(HILOS);
+		ServerSocket servidor = new ServerSocket(puerto, 50, InetAddress.getLoopbackAddress());
+		System.out.println("Servidor de consultas escuchando en el puerto " + servidor.getLocalPort());
+		try {
+			while(true) {
+				Socket conexion = servidor.accept();
+				pool.execute(() -> {
+					try {
+						atender(new BufferedReader(new InputStreamReader(conexion.getInputStream(), StandardCharsets.UTF_8)),
+								new OutputStreamWriter(conexion.getOutputStream(), StandardCharsets.UTF_8));
+					}catch(IOException e) {
+						// Conexión cerrada por el cliente
+					}finally {
+						try {
+							conexion.close();
+						}catch(IOException e) {
+							// Ya estaba cerrada
+						}
+					}
+				});
+			}
+		}finally {
+			servidor.close();
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Atiende las consultas de una conexión, una por línea, hasta que se cierre o se reciba "Salir".
+	 * @param entrada Consultas
+	 * @param salida Respuestas
+	 * @throws IOException En caso de error de lectura o escritura
+	 */
+	static void atender(BufferedReader entrada, Writer salida) throws IOException {
+		SalidaRespuesta respuesta = new SalidaRespuesta(new BufferedWriter(salida));
+		String linea;
+		while((linea = entrada.readLine())!=null) {
+			linea = linea.trim();
+			if(linea.isEmpty()) continue;
+			if(linea.equalsIgnoreCase("salir")) break;
+
+			responder(linea, respuesta);
+			respuesta.flush();
+		}
+		respuesta.flush();
+	}
+
+	/**
+	 * Responde a una consulta, terminando la respuesta con la línea de fin.
+	 * @param linea Consulta
+	 * @param salida Salida de la respuesta
+	 * @throws IOException En caso de error al escribir
+	 */
+	private static void responder(String linea, SalidaRespuesta salida) throws IOException {
+		List<String> lista = Comandos.separarParametros(linea);
+		String[] parametros = lista.toArray(new String[0]);
+		if(parametros.length==0) {
+			// P.ej. una consulta formada solo por unas comillas
+			error(salida, "Comando incorrecto: " + linea);
+			salida.terminar();
+			return;
+		}
+		switch(parametros[0].toLowerCase()) {
+		case "expediente":
+			consultarExpediente(parametros, salida);
+			break;
+
+		case "ocupacionaula":
+			consultarOcupacionAula(parametros, salida);
+			break;
+
+		case "elegibles":
+			consultarElegibles(parametros, salida);
+			break;
+
+		default:
+			error(salida, "Comando incorrecto: " + linea);
+			break;
+		}
+		salida.terminar();
+	}
+
+	/**
+	 * Expediente de un alumno, igual que el que escribe el comando "Expediente".
+	 */
+	private static void consultarExpediente(String[] parametros, Writer salida) throws IOException {
+		Comandos.Comprobacion<?> argumentos = Comandos.comprobarArgumentos(Errores.EXPEDIENTE_ALUMNO, parametros, 2, 2);
+		if(!argumentos.esCorrecta()) {
+			error(salida, argumentos.getAviso());
+			return;
+		}
+		Comandos.Comprobacion<Alumno> alumno = Comandos.comprobarAlumno(Errores.EXPEDIENTE_ALUMNO, parametros[1]);
+		if(!alumno.esCorrecta()) {
+			error(salida, alumno.getAviso());
+			return;
+		}
+		salida.write(alumno.getValor().getExpediente());
+	}
+
+	/**
+	 * Calendario de ocupación de un aula o de todas, igual que el que muestra el comando "OcupacionAula".
+	 */
+	private static void consultarOcupacionAula(String[] parametros, Writer salida) throws IOException {
+		Comandos.Comprobacion<?> argumentos = Comandos.comprobarArgumentos(Errores.CALENDARIO_OCUPACION_AULA, parametros, 2, 3);
+		if(!argumentos.esCorrecta()) {
+			error(salida, argumentos.getAviso());
+			return;
+		}
+		Comandos.Comprobacion<CalendarioOcupacion.Formato> formato = Comandos.comprobarFormato(
+				parametros.length==3 ? parametros[2] : null, CalendarioOcupacion.Formato.TEXTO);
+		if(!formato.esCorrecta()) {
+			error(salida, formato.getAviso());
+			return;
+		}
+		Comandos.Comprobacion<Collection<Aula>> aulas = Comandos.comprobarAulas(parametros[1]);
+		if(!aulas.esCorrecta()) {
+			error(salida, aulas.getAviso());
+			return;
+		}
+		boolean todas = parametros[1].equals("*");
+		CalendarioOcupacion.escribir(CalendarioOcupacion.generar(aulas.getValor()).values(), formato.getValor(), todas, salida);
+	}
+
+	/**
+	 * Matriz de elegibilidad en CSV (ver {@link PlanificadorMatricula}), de todos los alumnos o de uno solo.
+	 */
+	private static void consultarElegibles(String[] parametros, Writer salida) throws IOException {
+		Comandos.Comprobacion<?> argumentos = Comandos.comprobarArgumentos(Errores.ALUMNOS_ELEGIBLES, parametros, 1, 2);
+		if(!argumentos.esCorrecta()) {
+			error(salida, argumentos.getAviso());
+			return;
+		}
+
+		Alumno[] alumnos;
+		if(parametros.length==2) {
+			Comandos.Comprobacion<Alumno> alumno = Comandos.comprobarAlumno(Errores.ALUMNOS_ELEGIBLES, parametros[1]);
+			if(!alumno.esCorrecta()) {
+				error(salida, alumno.getAviso());
+				return;
+			}
+			alumnos = new Alumno[] {alumno.getValor()};
+		}else {
+			alumnos = Arranque.alumnos.values().toArray(new Alumno[0]);
+		}
+		Asignatura[] asignaturas = Arranque.asignaturas.values().toArray(new Asignatura[0]);
+		PlanificadorMatricula.escribirCsv(alumnos, asignaturas, Runtime.getRuntime().availableProcessors(), salida);
+	}
+
+	private static void error(Writer salida, String aviso) throws IOException {
+		salida.write("ERROR " + aviso + "\n");
+	}
+
+	/**
+	 * Salida de una respuesta: duplica el punto inicial de las líneas que empiezan por punto
+	 * y añade la línea de fin de respuesta.
+	 */
+	private static class SalidaRespuesta extends Writer {
+		private final Writer salida;
+		private boolean inicioLinea = true;
+
+		SalidaRespuesta(Writer salida) {
+			this.salida = salida;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			int desde = off;
+			for(int i = off; i<off + len; i++) {
+				char c = cbuf[i];
+				if(inicioLinea && c=='.') {
+					salida.write(cbuf, desde, i - desde);
+					salida.write('.');
+					desde = i;
+				}
+				inicioLinea = c=='\n';
+			}
+			salida.write(cbuf, desde, off + len - desde);
+		}
+
+		/**
+		 * Termina la respuesta actual con la línea de fin.
+		 */
+		void terminar() throws IOException {
+			if(!inicioLinea) salida.write('\n');
+			salida.write(FIN_RESPUESTA + "\n");
+			inicioLinea = true;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			salida.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			salida.close();
+		}
+	}
+
+}
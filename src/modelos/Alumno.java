@@ -1,7 +1,10 @@
 package modelos;
 
+import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.GregorianCalendar;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import docencia.Arranque;
 
 /**
@@ -12,12 +15,27 @@ import docencia.Arranque;
  */
 public class Alumno extends Persona implements EscribibleEnFichero {
 	
-	private GregorianCalendar fechaIngreso;
+	private int fechaIngreso; // día epoch (ver la clase Fechas), o Fechas.FECHA_INCORRECTA (ver Persona#getFechaIncorrecta)
 	private ArrayList<AsignaturaSuperada> superadas;
 	private ArrayList<DocenciaRecibida> actuales;
+	// Las mismas asignaturas superadas y matriculadas, como bitsets
+	private ConjuntoAsignaturas conjuntoSuperadas = new ConjuntoAsignaturas();
+	private ConjuntoAsignaturas conjuntoMatriculadas = new ConjuntoAsignaturas();
+	// Expediente ya generado (String), marca de un expediente que se está generando (Object), o null si hay que generarlo
+	private volatile Object expediente;
+	private Object instantanea; // última instantánea de la que se ha obtenido el texto, o el texto guardado para ella (ver Instantanea)
 	
 	private static final String NOMBRE_FICHERO = "alumnos.txt";
 	
+	// DecimalFormat no es thread-safe: cada hilo que genere expedientes usa el suyo
+	private static final ThreadLocal<DecimalFormat> FORMATO_MEDIA = ThreadLocal.withInitial(() -> new DecimalFormat("#.00"));
+	
+	private static final AtomicReferenceFieldUpdater<Alumno, Object> EXPEDIENTE =
+			AtomicReferenceFieldUpdater.newUpdater(Alumno.class, Object.class, "expediente");
+	
+	// Buffer reutilizable de cada hilo para generar expedientes
+	private static final ThreadLocal<StringBuilder> BUFFER_EXPEDIENTE = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+	
 	/**
 	 * Constructor de la clase Alumno. Permite crear un objeto de la clase Alumno.
 	 * @param dni DNI del alumno
@@ -42,6 +60,7 @@ public class Alumno extends Persona implements EscribibleEnFichero {
 				if(campos.length==3) {
 					AsignaturaSuperada asignatura = new AsignaturaSuperada(campos[0], campos[1], Float.parseFloat(campos[2]));
 					this.superadas.add(asignatura);
+					conjuntoSuperadas.anadir(asignatura.getSiglas());
 				}
 			}	
 		}
@@ -60,31 +79,45 @@ public class Alumno extends Persona implements EscribibleEnFichero {
 					// Matriculado pero sin grupo:
 					asignatura = new DocenciaRecibida(campos[0]);
 					this.actuales.add(asignatura);
+					conjuntoMatriculadas.anadir(campos[0]);
 				}else if(campos.length==3){
 					// Matriculado con grupo
 					asignatura = new DocenciaRecibida(campos[0], campos[1].charAt(0), Integer.parseInt(campos[2]));
 					this.actuales.add(asignatura);
+					conjuntoMatriculadas.anadir(campos[0]);
 				}
 				
 			}	
 		}
 		
-		this.fechaIngreso=Persona.fechaToGregorianCalendar(fechaIngreso);
+		this.fechaIngreso=Fechas.aDiaEpoch(fechaIngreso);
+		if(this.fechaIngreso==Fechas.FECHA_INCORRECTA) guardarFechaIncorrecta(1, fechaIngreso);
 		
 	}	
 	
 	/**
 	 * Devuelve la fecha de ingreso del alumno como un GregorianCalendar.
+	 * La fecha se guarda internamente como un día epoch, por lo que cada llamada crea un GregorianCalendar nuevo.
+	 * Devuelve null si la leída del fichero no es una fecha correcta.
 	 */
 	public GregorianCalendar getFechaIngreso() {
+		return Persona.fechaToGregorianCalendar(fechaIngreso);
+	}
+	
+	/**
+	 * Devuelve la fecha de ingreso del alumno como un día epoch (ver {@link Fechas}),
+	 * o {@link Fechas#FECHA_INCORRECTA} si la leída del fichero no es una fecha correcta.
+	 */
+	public int getDiaIngreso() {
 		return fechaIngreso;
 	}
 	
 	/**
-	 * Devuelve la fecha de ingreso del alumno formateada.
+	 * Devuelve la fecha de ingreso del alumno formateada, o tal como se leyó si no es una fecha correcta.
 	 */
 	public String getFechaIngresoFormateada() {
-		return dateFormat.format(fechaIngreso.getTime());
+		if(fechaIngreso==Fechas.FECHA_INCORRECTA) return getFechaIncorrecta(1);
+		return Fechas.formatear(fechaIngreso);
 	}
 	
 	/**
@@ -107,8 +140,35 @@ public class Alumno extends Persona implements EscribibleEnFichero {
 	 * @param siglas Siglas de la asignatura
 	 */
 	public void matricular(String siglas) {
+		antesDeModificar();
 		DocenciaRecibida dr = new DocenciaRecibida(siglas);
 		this.actuales.add(dr);
+		conjuntoMatriculadas.anadir(siglas);
+	}
+	
+	/**
+	 * Comprueba si el alumno está matriculado en una asignatura, tenga o no grupo asignado.
+	 * @param siglas Siglas de la asignatura
+	 * @return true si está matriculado
+	 */
+	public boolean estaMatriculado(String siglas) {
+		return conjuntoMatriculadas.contiene(siglas);
+	}
+	
+	/**
+	 * Número de asignaturas en las que está matriculado el alumno.
+	 */
+	public int getNumeroMatriculas() {
+		return conjuntoMatriculadas.tamano();
+	}
+	
+	/**
+	 * Comprueba si el alumno ha superado todos los prerrequisitos de una asignatura.
+	 * @param asignatura Asignatura
+	 * @return true si los cumple
+	 */
+	public boolean cumplePrerrequisitos(Asignatura asignatura) {
+		return conjuntoSuperadas.contieneTodas(asignatura.getConjuntoPrerrequisitos());
 	}
 	
 	/**
@@ -119,6 +179,7 @@ public class Alumno extends Persona implements EscribibleEnFichero {
 	 * @param idGrupo 1,...
 	 */
 	public void asignarGrupo(String asignatura, char tipoGrupo, int idGrupo) {
+		antesDeModificar();
 		boolean matriculado = false;
 		for(DocenciaRecibida dr: actuales) {
 			if(dr.getSiglas().equals(asignatura)) {
@@ -149,6 +210,8 @@ public class Alumno extends Persona implements EscribibleEnFichero {
 	 * @param cursoAcademico Curso académico en el que se evaluó la asignatura
 	 */
 	public void evaluarAsignatura(float nota, String siglasAsignatura, String cursoAcademico) {
+			antesDeModificar();
+			
 			// Aprobado o suspenso: se elimina la asignatura de la docencia recibida
 			ArrayList<DocenciaRecibida> eliminadas = new ArrayList<DocenciaRecibida>();
 			for(DocenciaRecibida dr: actuales) {
@@ -158,12 +221,80 @@ public class Alumno extends Persona implements EscribibleEnFichero {
 				}
 			}
 			actuales.removeAll(eliminadas);
+			conjuntoMatriculadas.quitar(siglasAsignatura);
 			
 			if(nota>=5) {
 				// Si la asignatura está aprobada, se incluirá en la lista de asignaturas superadas
 				superadas.add(new AsignaturaSuperada(siglasAsignatura, cursoAcademico, nota));
+				conjuntoSuperadas.anadir(siglasAsignatura);
 			}
 			
+			// El expediente guardado ya no es válido
+			expediente = null;
+			
+	}
+	
+	/**
+	 * Devuelve el expediente del alumno: una relación ordenada, por curso y asignatura, de todas las asignaturas aprobadas,
+	 * seguida de la nota media. Cada línea termina con un salto de línea.
+	 * El expediente se genera la primera vez que se pide y se guarda hasta que se evalúe una nueva asignatura
+	 * con {@link #evaluarAsignatura(float, String, String)} o se descarte con {@link #invalidarExpediente()}.
+	 * Se puede llamar desde varios hilos a la vez. Antes de generarlo se deja una marca en lugar del expediente,
+	 * y solo se guarda si la marca sigue ahí al terminar: si se ha descartado mientras tanto, el texto se ha generado
+	 * con datos anteriores y no se guarda.
+	 * @return Texto del expediente
+	 */
+	public String getExpediente() {
+		Object actual = expediente;
+		if(actual instanceof String) return (String) actual;
+		
+		Object marca = new Object();
+		boolean guardar = actual==null && EXPEDIENTE.compareAndSet(this, null, marca); // si otro hilo lo está generando, no se guarda
+		String texto = null;
+		try {
+			texto = generarExpediente();
+		}finally {
+			if(guardar) EXPEDIENTE.compareAndSet(this, marca, texto); // si falla, quita la marca
+		}
+		return texto;
+	}
+	
+	/**
+	 * Descarta el expediente ya generado, para que se vuelva a generar la próxima vez que se pida.
+	 * Se usa cuando cambian los datos de las asignaturas de las que depende (p.ej. su curso).
+	 */
+	public void invalidarExpediente() {
+		expediente = null;
+	}
+	
+	/**
+	 * Genera el texto del expediente. El curso de cada asignatura se busca una sola vez,
+	 * y las entradas se ordenan por la clave (curso, siglas) ya calculada.
+	 */
+	private String generarExpediente() {
+		EntradaExpediente[] entradas = new EntradaExpediente[superadas.size()];
+		for(int i = 0; i<entradas.length; i++) {
+			AsignaturaSuperada as = superadas.get(i);
+			entradas[i] = new EntradaExpediente(as.getCurso(), as);
+		}
+		Arrays.sort(entradas);
+		
+		String salto = System.lineSeparator();
+		StringBuilder sb = BUFFER_EXPEDIENTE.get();
+		sb.setLength(0);
+		float sumaNotas = 0;
+		for(EntradaExpediente entrada: entradas) {
+			// Recorre todas las asignaturas aprobadas por el alumno, ya ordenadas
+			AsignaturaSuperada as = entrada.asignatura;
+			sumaNotas += as.getNota();
+			sb.append(entrada.curso).append("; ").append(as.getSiglas()).append("; ")
+				.append(as.getNota()).append("; ").append(as.getCursoAcademico()).append(salto);
+		}
+		
+		// Nota media del expediente
+		float notaMedia = sumaNotas/entradas.length;
+		sb.append("Nota media del expediente: ").append(FORMATO_MEDIA.get().format(notaMedia)).append(salto);
+		return sb.toString();
 	}
 	
 	/**
@@ -203,6 +334,30 @@ public class Alumno extends Persona implements EscribibleEnFichero {
 		
 	}
 	
+	/**
+	 * Devuelve el texto del alumno tal como era al abrir una instantánea (ver {@link Instantanea}):
+	 * el guardado antes de modificarlo, o el actual si no se ha modificado desde que se abrió.
+	 * Implementado por la interfaz {@link EscribibleEnFichero}.
+	 */
+	public synchronized String getTextoInstantanea(Instantanea instantanea) {
+		String cadena = instantanea.textoGuardado(this.instantanea);
+		this.instantanea = instantanea;
+		return cadena!=null ? cadena : toTexto();
+	}
+	
+	/**
+	 * Si se está escribiendo una instantánea que aún no incluye al alumno, guarda su texto antes de modificarlo.
+	 */
+	private void antesDeModificar() {
+		Instantanea abierta = Instantanea.actual();
+		if(abierta!=null) guardarTextoInstantanea(abierta);
+	}
+	
+	private synchronized void guardarTextoInstantanea(Instantanea abierta) {
+		if(abierta.incluye(instantanea)) return; // ya se ha escrito o guardado
+		instantanea = abierta.guardar(toTexto());
+	}
+	
 	/**
 	 * Devuelve el nombre del fichero de texto en el que se guardan los alumnos.
 	 * Implementado por la interfaz {@link EscribibleEnFichero}.
@@ -278,8 +433,9 @@ public class Alumno extends Persona implements EscribibleEnFichero {
 		 */
 		public int compareTo(AsignaturaSuperada o) {
 			// Empezamos ordenando por curso
-			if(o.getCurso()>this.getCurso()) return -1;
-			if(o.getCurso()<this.getCurso()) return 1;
+			int curso = this.getCurso(), otroCurso = o.getCurso();
+			if(otroCurso>curso) return -1;
+			if(otroCurso<curso) return 1;
 			
 			// Si el curso es el mismo, compara por siglas de la asignatura
 			return this.getSiglas().compareTo(o.getSiglas());
@@ -287,6 +443,26 @@ public class Alumno extends Persona implements EscribibleEnFichero {
 		
 	}
 	
+	/**
+	 * Entrada del expediente: una asignatura superada junto con su curso, ya calculado.
+	 * Se ordena por curso y, en caso de empate, por orden alfabético de las siglas de la asignatura.
+	 */
+	private static class EntradaExpediente implements Comparable<EntradaExpediente>{
+		private final int curso;
+		private final AsignaturaSuperada asignatura;
+		
+		EntradaExpediente(int curso, AsignaturaSuperada asignatura){
+			this.curso = curso;
+			this.asignatura = asignatura;
+		}
+		
+		@Override
+		public int compareTo(EntradaExpediente o) {
+			if(curso!=o.curso) return curso<o.curso?-1:1;
+			return asignatura.getSiglas().compareTo(o.asignatura.getSiglas());
+		}
+	}
+	
 	/**
 	 * Asignatura en la que está matriculado el alumno. Se usa para modelar el campo correspondiente del fichero alumnos.txt.
 	 * Si un alumno está matriculado en una asignatura pero no tiene grupo asignado, tipoGrupo = '#' e id = 0.
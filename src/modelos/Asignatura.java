@@ -1,6 +1,8 @@
 package modelos;
 
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Clase que modela una asignatura.
@@ -16,12 +18,19 @@ public class Asignatura implements EscribibleEnFichero {
 	private int cuatrimestre;
 	private String dniCoordinador;
 	private String[] preRequisitos;
+	private ConjuntoAsignaturas conjuntoPrerrequisitos = new ConjuntoAsignaturas();
 	private int duracionGrupoA;
 	private int duracionGrupoB;
 	private ArrayList<Grupo> gruposA;
 	private ArrayList<Grupo> gruposB;
+	private final int id; // identificador numérico de las siglas (ver #getId(String)), para no buscarlo en cada consulta
+	private Object instantanea; // última instantánea de la que se ha obtenido el texto, o el texto guardado para ella (ver Instantanea)
 	
 	private static final String NOMBRE_FICHERO = "asignaturas.txt";
+	
+	// Identificadores numéricos de las asignaturas, asignados por orden de aparición (ver #getId(String))
+	private static final ConcurrentHashMap<String, Integer> IDENTIFICADORES = new ConcurrentHashMap<String, Integer>();
+	private static final AtomicInteger SIGUIENTE_ID = new AtomicInteger();
 
 	/**
 	 * Constructor de la clase Asignatura. Permite crear un objeto de la clase Asignatura.
@@ -39,12 +48,14 @@ public class Asignatura implements EscribibleEnFichero {
 	public Asignatura(String siglas, String nombre, int curso, int cuatrimestre, String dniCoordinador, String preRequisitos, int duracionGrupoA, int duracionGrupoB, String gruposA, String gruposB) {
 	
 		this.siglas = siglas;
+		this.id = getId(siglas); // reserva su identificador
 		this.nombre = nombre;
 		this.curso = curso;
 		this.cuatrimestre = cuatrimestre;
 		this.dniCoordinador = dniCoordinador;
 		if(preRequisitos!=null) {
 			this.preRequisitos=preRequisitos.split(";");
+			for(String pr: this.preRequisitos) conjuntoPrerrequisitos.anadir(pr);
 		}else {
 			// Si no hay prerrequisitos se crea un array vacío
 			this.preRequisitos= new String[0];
@@ -92,6 +103,36 @@ public class Asignatura implements EscribibleEnFichero {
 		return siglas;
 	}
 	
+	/**
+	 * Devuelve el identificador numérico de la asignatura (ver {@link #getId(String)}).
+	 */
+	public int getId() {
+		return id;
+	}
+	
+	/**
+	 * Devuelve el identificador numérico de unas siglas de asignatura, asignándole uno nuevo si aún no lo tenía.
+	 * Los identificadores son enteros consecutivos empezando en 0, y no cambian durante la ejecución del programa,
+	 * por lo que se pueden usar como índices de arrays o bitsets, o como parte de claves numéricas.
+	 * @param siglas Siglas de la asignatura (exista o no en el mapa de asignaturas)
+	 * @return Identificador de la asignatura
+	 */
+	public static int getId(String siglas) {
+		Integer id = IDENTIFICADORES.get(siglas);
+		if(id!=null) return id;
+		return IDENTIFICADORES.computeIfAbsent(siglas, s -> SIGUIENTE_ID.getAndIncrement());
+	}
+	
+	/**
+	 * Busca el identificador numérico de unas siglas de asignatura, sin asignarle uno nuevo.
+	 * @param siglas Siglas de la asignatura
+	 * @return Identificador de la asignatura, o -1 si aún no tiene
+	 */
+	public static int buscarId(String siglas) {
+		Integer id = IDENTIFICADORES.get(siglas);
+		return id!=null ? id : -1;
+	}
+	
 	/**
 	 * Devuelve el nombre de la asignatura.
 	 */
@@ -127,6 +168,13 @@ public class Asignatura implements EscribibleEnFichero {
 		return preRequisitos;
 	}
 	
+	/**
+	 * Devuelve los prerrequisitos de la asignatura como un conjunto de asignaturas (bitset).
+	 */
+	public ConjuntoAsignaturas getConjuntoPrerrequisitos() {
+		return conjuntoPrerrequisitos;
+	}
+	
 	/**
 	 * Devuelve la duración de un grupo A.
 	 */
@@ -194,6 +242,7 @@ public class Asignatura implements EscribibleEnFichero {
 	 * @param aula Aula en la que tiene lugar el grupo
 	 */
 	public void crearGrupoAsignatura(char tipo, int id, char dia, int horaInicio, String aula) {
+		antesDeModificar();
 		Grupo grupo = new Grupo(id, dia, horaInicio, aula, tipo);
 		if(tipo=='A') gruposA.add(grupo);
 		else if(tipo=='B') gruposB.add(grupo);
@@ -243,6 +292,30 @@ public class Asignatura implements EscribibleEnFichero {
 		
 	}
 	
+	/**
+	 * Devuelve el texto de la asignatura tal como era al abrir una instantánea (ver {@link Instantanea}):
+	 * el guardado antes de modificarlo, o el actual si no se ha modificado desde que se abrió.
+	 * Implementado por la interfaz {@link EscribibleEnFichero}.
+	 */
+	public synchronized String getTextoInstantanea(Instantanea instantanea) {
+		String cadena = instantanea.textoGuardado(this.instantanea);
+		this.instantanea = instantanea;
+		return cadena!=null ? cadena : toTexto();
+	}
+	
+	/**
+	 * Si se está escribiendo una instantánea que aún no incluye la asignatura, guarda su texto antes de modificarlo.
+	 */
+	private void antesDeModificar() {
+		Instantanea abierta = Instantanea.actual();
+		if(abierta!=null) guardarTextoInstantanea(abierta);
+	}
+	
+	private synchronized void guardarTextoInstantanea(Instantanea abierta) {
+		if(abierta.incluye(instantanea)) return; // ya se ha escrito o guardado
+		instantanea = abierta.guardar(toTexto());
+	}
+	
 	/**
 	 * Devuelve el nombre del fichero de texto en el que se guardan los profesores.
 	 * Implementado por la interfaz {@link EscribibleEnFichero}.
@@ -1,9 +1,6 @@
 package modelos;
 
-import java.util.Arrays;
-import java.util.List;
-
-import docencia.Arranque;
+import java.util.Collections;
 
 /**
  * Clase que modela un aula.
@@ -34,97 +31,10 @@ public class Aula implements EscribibleEnFichero{
 	
 	/**
 	 * Muestra en pantalla el calendario de ocupación de esta aula.
+	 * Para obtener el de varias aulas a la vez, es más eficiente usar {@link CalendarioOcupacion#generar(java.util.Collection)}.
 	 */
 	public void obtenerCalendarioOcupacion() {
-		// Crea las matrices en la que se almacenarán los grupos, asignaturas y profesores del horario
-		// Matrices 5x10: 5 días, 10 horas
-		Asignatura.Grupo clases[][] = new Asignatura.Grupo[5][10];
-		Asignatura asignaturas[][] = new Asignatura[5][10];
-		String profesores[][] = new String[5][10];
-		List<Character> diasSemana = Arrays.asList('L','M','X','J','V');
-		
-		for(Asignatura as: Arranque.asignaturas.values()) {
-			for(Asignatura.Grupo ag: as.getGruposTodos()) {
-				// Recorre todos los grupos de todas las asignaturas, en busca de sesiones que se impartan en esta aula
-				if(ag.getAula().equals(this.siglas)) {
-					// Si el grupo ag se imparte en esta aula...
-					int duracion = ag.getTipo()=='A'?
-							as.getDuracionGrupoA():as.getDuracionGrupoB(); // horas que dura el grupo
-					int dia = diasSemana.indexOf(ag.getDia()); //L = 0; M = 1...
-					
-					// Hay clase, por lo que debemos obtener el profesor que la imparte
-					String siglasProfe = null;
-					bucleProfesor:
-					for(Profesor profe: Arranque.profesores.values()) {
-						for(Profesor.DocenciaImpartida di: profe.getDocenciaImpartida()) {
-							// Recorre todos los profesores y sus docencias impartidas hasta encontrar este grupo
-							if(di.getSiglas().equals(as.getSiglas()) && di.getIdGrupo()==ag.getId() && di.getTipoGrupo() == ag.getTipo()) {
-								// Es este profesor el que imparte la asignatura
-								siglasProfe = profe.getSiglasProfesor();
-								break bucleProfesor;
-							}
-						}
-					}
-					
-					for(int i = 0;i<duracion;i++) {
-						// OJO: si hay una Exception aquí es porque hay clases que están mal configuradas (después de las 18h!)
-						clases[dia][ag.getHoraInicio()-9+i] = ag; // se guarda este grupo en la matriz
-						asignaturas[dia][ag.getHoraInicio()-9+i] = as; // se guarda esta asignatura en la matriz
-						profesores[dia][ag.getHoraInicio()-9+i] = siglasProfe; // se guarda este profesor en la matriz
-					}
-				}
-			}
-		}
-		
-		// Imprime la cabecera de la tabla
-		System.out.println("AULA: " + this.siglas);
-		System.out.println();
-		System.out.println("Hora \t\t L \t\t M \t\t X \t\t J \t\t V");
-		System.out.println();
-		for(int hora=0;hora<10;hora++) {
-			// Imprime el horario, fila a fila
-			System.out.printf((9+hora) + "-" + (10+hora) + " \t\t"); // columna de la hora
-			
-			// Imprime la línea con la asignatura y el grupo
-			for(int dia=0;dia<5;dia++) {
-				if(hora!=5) {
-					// Comprueba si hay algún grupo ese día a esa hora
-					Asignatura.Grupo grupo = clases[dia][hora];
-					Asignatura asignatura = asignaturas[dia][hora];
-					if(grupo!=null) {
-						// Imprime la asignatura y el grupo
-						System.out.printf("%s-%c%d \t\t", asignatura.getSiglas(), grupo.getTipo(), grupo.getId());
-					}else {
-						// Imprime un espacio
-						System.out.printf("\t\t");
-					}
-				}else {
-					// Hora de la comida
-					System.out.printf("XXXXXX \t\t");
-				}
-				
-			}
-			
-			System.out.println(); // siguiente línea para las siglas de los profesores
-			
-			// Imprime la línea con las siglas del profesor
-			System.out.printf("\t\t");
-			for(int dia=0;dia<5;dia++) {
-				if(hora!=5) {
-					String profesor = profesores[dia][hora];
-					if(profesor!=null) {
-						// Imprime sus siglas
-						System.out.printf(profesor+"\t\t");
-					}else {
-						// Imprime un espacio
-						System.out.printf("\t\t");
-					}
-				}
-				
-			}
-			
-			System.out.println();
-		}
+		CalendarioOcupacion.generar(Collections.singletonList(this)).get(siglas).imprimir();
 	}
 	
 	/**
@@ -0,0 +1,330 @@
+package modelos;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+
+import docencia.Arranque;
+
+/**
+ * Calendario de ocupación semanal de un aula: qué grupo, de qué asignatura y con qué profesor, ocupa el aula cada día y cada hora.
+ * Los calendarios de varias aulas se generan a la vez con {@link #generar(Collection)}, en una sola pasada por todos los grupos.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class CalendarioOcupacion {
+
+	// Matrices 5x10: 5 días, 10 horas (de 9 a 19)
+	private static final int DIAS = 5;
+	private static final int HORAS = 10;
+	private static final int HORA_INICIO = 9;
+	private static final int HORA_COMIDA = 5; // de 14 a 15
+	private static final String DIAS_SEMANA = "LMXJV";
+	
+	/**
+	 * Cabecera de las filas del formato CSV.
+	 */
+	public static final String CABECERA_CSV = "aula,dia,hora,asignatura,tipoGrupo,grupo,profesor";
+	
+	// Textos precalculados de la tabla
+	private static final String SALTO = System.lineSeparator();
+	private static final String CELDA_FIN = " \t\t";
+	private static final String CELDA_VACIA = "\t\t";
+	private static final String CELDA_COMIDA = "XXXXXX \t\t";
+	private static final String[] COLUMNA_HORA = new String[HORAS];
+	static {
+		for(int hora = 0; hora<HORAS; hora++) {
+			COLUMNA_HORA[hora] = (HORA_INICIO+hora) + "-" + (HORA_INICIO+hora+1) + CELDA_FIN;
+		}
+	}
+
+	private final String aula;
+	private final Asignatura.Grupo clases[][] = new Asignatura.Grupo[DIAS][HORAS];
+	private final Asignatura asignaturas[][] = new Asignatura[DIAS][HORAS];
+	private final String profesores[][] = new String[DIAS][HORAS];
+
+	private CalendarioOcupacion(String aula) {
+		this.aula = aula;
+	}
+
+	/**
+	 * Genera los calendarios de ocupación de las aulas indicadas.
+	 * Primero se construye un índice con el profesor que imparte cada grupo, recorriendo una sola vez la docencia de todos los profesores.
+	 * Después se recorren una sola vez todos los grupos de todas las asignaturas, colocando cada uno en el calendario de su aula.
+	 * El coste es lineal en el número de grupos y de docencias impartidas, independientemente del número de aulas.
+	 * @param aulas Aulas de las que se quiere el calendario
+	 * @return Mapa con los calendarios, en el mismo orden que las aulas. La clave es las siglas del aula.
+	 */
+	public static LinkedHashMap<String, CalendarioOcupacion> generar(Collection<Aula> aulas) {
+		LinkedHashMap<String, CalendarioOcupacion> calendarios = new LinkedHashMap<String, CalendarioOcupacion>();
+		for(Aula aula: aulas) {
+			calendarios.put(aula.getSiglas(), new CalendarioOcupacion(aula.getSiglas()));
+		}
+
+		// Profesor de cada grupo: si varios profesores tienen el mismo grupo, se queda con el primero.
+		// Las siglas de cada profesor se obtienen una sola vez y todas las celdas comparten el mismo String
+		IdentityHashMap<Asignatura.Grupo, String> profesorGrupo = new IdentityHashMap<Asignatura.Grupo, String>();
+		IdentityHashMap<Profesor, String> siglasProfesores = new IdentityHashMap<Profesor, String>();
+		for(Profesor profe: Arranque.profesores.values()) {
+			for(Profesor.DocenciaImpartida di: profe.getDocenciaImpartida()) {
+				Asignatura asignatura = Arranque.asignaturas.get(di.getSiglas());
+				if(asignatura==null) continue;
+				Asignatura.Grupo grupo = asignatura.getGrupo(di.getIdGrupo(), di.getTipoGrupo());
+				if(grupo!=null && !profesorGrupo.containsKey(grupo)) {
+					profesorGrupo.put(grupo, siglasProfesores.computeIfAbsent(profe, Profesor::getSiglasProfesor));
+				}
+			}
+		}
+
+		// Coloca cada grupo en el calendario de su aula
+		for(Asignatura as: Arranque.asignaturas.values()) {
+			colocarGrupos(as, as.getGruposA(), as.getDuracionGrupoA(), calendarios, profesorGrupo);
+			colocarGrupos(as, as.getGruposB(), as.getDuracionGrupoB(), calendarios, profesorGrupo);
+		}
+
+		return calendarios;
+	}
+
+	private static void colocarGrupos(Asignatura as, Collection<Asignatura.Grupo> grupos, int duracion,
+			LinkedHashMap<String, CalendarioOcupacion> calendarios, IdentityHashMap<Asignatura.Grupo, String> profesorGrupo) {
+		for(Asignatura.Grupo ag: grupos) {
+			CalendarioOcupacion calendario = calendarios.get(ag.getAula());
+			if(calendario==null) continue; // grupo de un aula que no se ha pedido
+
+			int dia = DIAS_SEMANA.indexOf(ag.getDia()); //L = 0; M = 1...
+			if(dia<0) continue; // día mal configurado
+			String siglasProfe = profesorGrupo.get(ag);
+			for(int i = 0;i<duracion;i++) {
+				// Las horas de clases mal configuradas (antes de las 9h o después de las 18h) quedan fuera del calendario
+				int hora = ag.getHoraInicio()-HORA_INICIO+i;
+				if(hora<0 || hora>=HORAS) continue;
+				calendario.clases[dia][hora] = ag; // se guarda este grupo en la matriz
+				calendario.asignaturas[dia][hora] = as; // se guarda esta asignatura en la matriz
+				calendario.profesores[dia][hora] = siglasProfe; // se guarda este profesor en la matriz
+			}
+		}
+	}
+
+	/**
+	 * Devuelve las siglas del aula.
+	 */
+	public String getAula() {
+		return aula;
+	}
+
+	/**
+	 * Muestra en pantalla el calendario de ocupación, con el formato de tabla separada por tabuladores.
+	 */
+	public void imprimir() {
+		StringBuilder sb = new StringBuilder(2048);
+		escribirTexto(sb);
+		System.out.print(sb);
+		System.out.flush();
+	}
+	
+	/**
+	 * Escribe varios calendarios de ocupación en la salida indicada (p.ej. System.out o un fichero).
+	 * Cada calendario se genera en un StringBuilder reutilizado y se vuelca de una sola vez en la salida.
+	 * @param calendarios Calendarios a escribir
+	 * @param formato Formato de salida
+	 * @param separar En formato texto, si se añade una doble línea en blanco después de cada calendario
+	 * @param salida Salida en la que se escriben los calendarios
+	 * @throws IOException En caso de error al escribir en la salida
+	 */
+	public static void escribir(Collection<CalendarioOcupacion> calendarios, Formato formato, boolean separar, Appendable salida) throws IOException {
+		StringBuilder sb = new StringBuilder(4096);
+		
+		// Cabecera
+		if(formato==Formato.CSV) sb.append(CABECERA_CSV).append(SALTO);
+		if(formato==Formato.JSON) sb.append('[');
+		
+		boolean primero = true;
+		for(CalendarioOcupacion calendario: calendarios) {
+			switch(formato) {
+			case TEXTO:
+				calendario.escribirTexto(sb);
+				if(separar) sb.append(SALTO).append(SALTO); // doble salto de línea
+				break;
+			case CSV:
+				calendario.escribirCsv(sb);
+				break;
+			case JSON:
+				if(!primero) sb.append(',');
+				calendario.escribirJson(sb);
+				break;
+			}
+			primero = false;
+			
+			// Vuelca el calendario entero en la salida
+			salida.append(sb);
+			if(salida instanceof Flushable) ((Flushable) salida).flush();
+			sb.setLength(0);
+		}
+		
+		// Final
+		if(formato==Formato.JSON) {
+			salida.append(']').append(SALTO);
+			if(salida instanceof Flushable) ((Flushable) salida).flush();
+		}
+	}
+	
+	/**
+	 * Añade el calendario, con el formato de tabla separada por tabuladores, al StringBuilder.
+	 */
+	public void escribirTexto(StringBuilder sb) {
+		// Cabecera de la tabla
+		sb.append("AULA: ").append(this.aula).append(SALTO);
+		sb.append(SALTO);
+		sb.append("Hora \t\t L \t\t M \t\t X \t\t J \t\t V").append(SALTO);
+		sb.append(SALTO);
+		for(int hora=0;hora<HORAS;hora++) {
+			// Horario, fila a fila
+			sb.append(COLUMNA_HORA[hora]); // columna de la hora
+			
+			// Línea con la asignatura y el grupo
+			for(int dia=0;dia<DIAS;dia++) {
+				if(hora!=HORA_COMIDA) {
+					// Comprueba si hay algún grupo ese día a esa hora
+					Asignatura.Grupo grupo = clases[dia][hora];
+					if(grupo!=null) {
+						// Asignatura y grupo
+						sb.append(asignaturas[dia][hora].getSiglas()).append('-').append(grupo.getTipo()).append(grupo.getId()).append(CELDA_FIN);
+					}else {
+						// Celda vacía
+						sb.append(CELDA_VACIA);
+					}
+				}else {
+					// Hora de la comida
+					sb.append(CELDA_COMIDA);
+				}
+				
+			}
+			
+			sb.append(SALTO); // siguiente línea para las siglas de los profesores
+			
+			// Línea con las siglas del profesor
+			sb.append(CELDA_VACIA);
+			for(int dia=0;dia<DIAS;dia++) {
+				if(hora!=HORA_COMIDA) {
+					String profesor = profesores[dia][hora];
+					if(profesor!=null) sb.append(profesor);
+					sb.append(CELDA_VACIA);
+				}
+				
+			}
+			
+			sb.append(SALTO);
+		}
+	}
+	
+	/**
+	 * Añade el calendario en formato CSV al StringBuilder: una fila por cada hora ocupada del aula.
+	 * Las columnas son las de {@link #CABECERA_CSV}.
+	 */
+	public void escribirCsv(StringBuilder sb) {
+		for(int dia=0;dia<DIAS;dia++) {
+			for(int hora=0;hora<HORAS;hora++) {
+				Asignatura.Grupo grupo = clases[dia][hora];
+				if(grupo==null) continue;
+				
+				campoCsv(sb, aula).append(',').append(DIAS_SEMANA.charAt(dia)).append(',').append(HORA_INICIO+hora).append(',');
+				campoCsv(sb, asignaturas[dia][hora].getSiglas()).append(',').append(grupo.getTipo()).append(',').append(grupo.getId()).append(',');
+				if(profesores[dia][hora]!=null) campoCsv(sb, profesores[dia][hora]);
+				sb.append(SALTO);
+			}
+		}
+	}
+	
+	/**
+	 * Añade el calendario en formato JSON al StringBuilder: un objeto con las siglas del aula
+	 * y la lista de horas ocupadas (día, hora, asignatura, tipo de grupo, grupo y profesor).
+	 */
+	public void escribirJson(StringBuilder sb) {
+		sb.append("{\"aula\":");
+		cadenaJson(sb, aula).append(",\"ocupacion\":[");
+		boolean primero = true;
+		for(int dia=0;dia<DIAS;dia++) {
+			for(int hora=0;hora<HORAS;hora++) {
+				Asignatura.Grupo grupo = clases[dia][hora];
+				if(grupo==null) continue;
+				
+				if(!primero) sb.append(',');
+				primero = false;
+				sb.append("{\"dia\":\"").append(DIAS_SEMANA.charAt(dia)).append("\",\"hora\":").append(HORA_INICIO+hora).append(",\"asignatura\":");
+				cadenaJson(sb, asignaturas[dia][hora].getSiglas()).append(",\"tipoGrupo\":\"").append(grupo.getTipo())
+					.append("\",\"grupo\":").append(grupo.getId()).append(",\"profesor\":");
+				if(profesores[dia][hora]!=null) cadenaJson(sb, profesores[dia][hora]);
+				else sb.append("null");
+				sb.append('}');
+			}
+		}
+		sb.append("]}");
+	}
+	
+	private static StringBuilder campoCsv(StringBuilder sb, String valor) {
+		if(valor.indexOf(',')<0 && valor.indexOf('"')<0) return sb.append(valor);
+		sb.append('"');
+		for(int i = 0; i<valor.length(); i++) {
+			char c = valor.charAt(i);
+			if(c=='"') sb.append('"');
+			sb.append(c);
+		}
+		return sb.append('"');
+	}
+	
+	private static StringBuilder cadenaJson(StringBuilder sb, String valor) {
+		sb.append('"');
+		for(int i = 0; i<valor.length(); i++) {
+			char c = valor.charAt(i);
+			if(c=='"' || c=='\\') sb.append('\\').append(c);
+			else if(c<0x20) sb.append(String.format("\\u%04x", (int) c));
+			else sb.append(c);
+		}
+		return sb.append('"');
+	}
+	
+	/**
+	 * Formatos en los que se puede escribir un calendario de ocupación.
+	 */
+	public enum Formato {
+		/**
+		 * Tabla separada por tabuladores, tal como se muestra en pantalla.
+		 */
+		TEXTO,
+		/**
+		 * Una fila por cada hora ocupada, con las columnas de {@link CalendarioOcupacion#CABECERA_CSV}.
+		 */
+		CSV,
+		/**
+		 * Un array JSON con un objeto por aula.
+		 */
+		JSON;
+		
+		/**
+		 * Obtiene el formato a partir de su nombre (texto, csv o json), sin distinguir mayúsculas.
+		 * @param nombre Nombre del formato
+		 * @return El formato, o null si no existe
+		 */
+		public static Formato deNombre(String nombre) {
+			for(Formato formato: values()) {
+				if(formato.name().equalsIgnoreCase(nombre)) return formato;
+			}
+			return null;
+		}
+		
+		/**
+		 * Deduce el formato a partir de la extensión de un fichero: .csv, .json o cualquier otra (texto).
+		 * @param fichero Nombre del fichero
+		 * @return El formato correspondiente
+		 */
+		public static Formato deFichero(String fichero) {
+			String nombre = fichero.toLowerCase();
+			if(nombre.endsWith(".csv")) return CSV;
+			if(nombre.endsWith(".json")) return JSON;
+			return TEXTO;
+		}
+	}
+
+}
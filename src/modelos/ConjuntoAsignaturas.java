@@ -0,0 +1,91 @@
+package modelos;
+
+import java.util.Arrays;
+
+/**
+ * Conjunto de asignaturas representado como un bitset sobre sus identificadores numéricos (ver {@link Asignatura#getId(String)}):
+ * el bit i está a 1 si la asignatura con identificador i pertenece al conjunto.
+ * Se usa para las asignaturas superadas y matriculadas de cada alumno y para los prerrequisitos de cada asignatura,
+ * de forma que comprobar los prerrequisitos es recorrer unas pocas palabras de 64 bits, sin crear objetos.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public class ConjuntoAsignaturas {
+
+	private static final long[] VACIO = new long[0];
+
+	private long[] palabras = VACIO;
+
+	/**
+	 * Crea un conjunto vacío.
+	 */
+	public ConjuntoAsignaturas() {
+
+	}
+
+	/**
+	 * Añade una asignatura al conjunto.
+	 * @param siglas Siglas de la asignatura
+	 */
+	public void anadir(String siglas) {
+		int id = Asignatura.getId(siglas);
+		int palabra = id >>> 6;
+		if(palabra>=palabras.length) palabras = Arrays.copyOf(palabras, Math.max(palabra + 1, palabras.length*2));
+		palabras[palabra] |= 1L << id;
+	}
+
+	/**
+	 * Quita una asignatura del conjunto.
+	 * @param siglas Siglas de la asignatura
+	 */
+	public void quitar(String siglas) {
+		int id = Asignatura.buscarId(siglas);
+		if(id<0 || (id >>> 6)>=palabras.length) return;
+		palabras[id >>> 6] &= ~(1L << id);
+	}
+
+	/**
+	 * Comprueba si una asignatura pertenece al conjunto.
+	 * @param siglas Siglas de la asignatura
+	 * @return true si pertenece
+	 */
+	public boolean contiene(String siglas) {
+		int id = Asignatura.buscarId(siglas);
+		if(id<0 || (id >>> 6)>=palabras.length) return false;
+		return (palabras[id >>> 6] & (1L << id)) != 0;
+	}
+
+	/**
+	 * Comprueba si todas las asignaturas de otro conjunto pertenecen también a este.
+	 * @param otro Conjunto de asignaturas
+	 * @return true si otro es un subconjunto de este
+	 */
+	public boolean contieneTodas(ConjuntoAsignaturas otro) {
+		long[] suyas = otro.palabras;
+		for(int i = 0; i<suyas.length; i++) {
+			long mias = i<palabras.length ? palabras[i] : 0;
+			if((suyas[i] & ~mias) != 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Número de asignaturas del conjunto.
+	 */
+	public int tamano() {
+		int tamano = 0;
+		for(long palabra: palabras) tamano += Long.bitCount(palabra);
+		return tamano;
+	}
+
+	/**
+	 * Indica si el conjunto está vacío.
+	 */
+	public boolean estaVacio() {
+		for(long palabra: palabras) {
+			if(palabra!=0) return false;
+		}
+		return true;
+	}
+
+}
@@ -15,7 +15,17 @@ public interface EscribibleEnFichero {
 	 * @return El texto que se guardará en el fichero.
 	 */
 	public String toTexto();
-	
+
+	/**
+	 * Obtiene el texto del objeto tal como era al abrir una instantánea (ver {@link Instantanea}).
+	 * Los modelos que no se modifican tras cargarlos pueden devolver directamente {@link #toTexto()}.
+	 * @param instantanea Instantánea abierta
+	 * @return El texto que se guardará en el fichero.
+	 */
+	public default String getTextoInstantanea(Instantanea instantanea) {
+		return toTexto();
+	}
+
 	/**
 	 * Obtiene el nombre del fichero de texto en el que se van a guardar los objetos.
 	 * @return El nombre del fichero de texto.
@@ -0,0 +1,168 @@
+package modelos;
+
+/**
+ * Funciones auxiliares para trabajar con fechas en formato d/M/yyyy (p.ej: 18/9/1998, 3/12/2011, 04/1/2010).
+ * Las fechas se representan como un int: el número de días transcurridos desde el 1/1/1970 (día epoch).
+ * Todos los métodos son estáticos y se pueden usar desde varios hilos a la vez. Salvo {@link #formatear(int)}, ninguno reserva memoria.
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public final class Fechas {
+
+	/**
+	 * Valor devuelto por {@link #aDiaEpoch(String)} cuando la fecha no es correcta.
+	 */
+	public static final int FECHA_INCORRECTA = Integer.MIN_VALUE;
+
+	// La clase no se puede instanciar:
+	private Fechas() {
+
+	}
+
+	/**
+	 * Convierte una fecha en formato d/M/yyyy a día epoch.
+	 * El día y el mes pueden tener uno o dos dígitos, y el año debe tener cuatro.
+	 * Se comprueba que la fecha exista (p.ej. el 35 de abril o el 29/2/2017 son incorrectos).
+	 * @param fecha Fecha en formato d/M/yyyy
+	 * @return Día epoch de la fecha, o {@link #FECHA_INCORRECTA} si el formato o la fecha son incorrectos
+	 */
+	public static int aDiaEpoch(String fecha) {
+		if(fecha==null) return FECHA_INCORRECTA;
+		int longitud = fecha.length();
+		int i = 0;
+
+		// Día
+		int dia = 0, digitos = 0;
+		for(; i<longitud && digitos<3 && esDigito(fecha.charAt(i)); i++, digitos++) dia = dia*10 + (fecha.charAt(i) - '0');
+		if(digitos<1 || digitos>2 || i>=longitud || fecha.charAt(i++)!='/') return FECHA_INCORRECTA;
+
+		// Mes
+		int mes = 0;
+		digitos = 0;
+		for(; i<longitud && digitos<3 && esDigito(fecha.charAt(i)); i++, digitos++) mes = mes*10 + (fecha.charAt(i) - '0');
+		if(digitos<1 || digitos>2 || i>=longitud || fecha.charAt(i++)!='/') return FECHA_INCORRECTA;
+
+		// Año
+		int anio = 0;
+		digitos = 0;
+		for(; i<longitud && digitos<5 && esDigito(fecha.charAt(i)); i++, digitos++) anio = anio*10 + (fecha.charAt(i) - '0');
+		if(digitos!=4 || i!=longitud) return FECHA_INCORRECTA;
+
+		// Existe la fecha?
+		if(mes<1 || mes>12 || dia<1 || dia>diasDelMes(anio, mes)) return FECHA_INCORRECTA;
+
+		return diaEpoch(anio, mes, dia);
+	}
+
+	/**
+	 * Convierte una fecha (año, mes y día) a día epoch. No se comprueba que la fecha exista.
+	 * @param anio Año
+	 * @param mes Mes: 1,...,12
+	 * @param dia Día del mes: 1,...,31
+	 * @return Día epoch
+	 */
+	public static int diaEpoch(int anio, int mes, int dia) {
+		// Se cuentan los años desde marzo, para que el 29 de febrero quede al final del año
+		int y = mes<=2 ? anio - 1 : anio;
+		int era = (y>=0 ? y : y - 399) / 400;
+		int anioDeEra = y - era*400;
+		int diaDelAnio = (153*(mes>2 ? mes - 3 : mes + 9) + 2)/5 + dia - 1;
+		int diaDeEra = anioDeEra*365 + anioDeEra/4 - anioDeEra/100 + diaDelAnio;
+		return era*146097 + diaDeEra - 719468;
+	}
+
+	/**
+	 * Devuelve el año de un día epoch.
+	 */
+	public static int getAnio(int diaEpoch) {
+		int z = diaEpoch + 719468;
+		int era = (z>=0 ? z : z - 146096) / 146097;
+		int diaDeEra = z - era*146097;
+		int anioDeEra = (diaDeEra - diaDeEra/1460 + diaDeEra/36524 - diaDeEra/146096) / 365;
+		int diaDelAnio = diaDeEra - (365*anioDeEra + anioDeEra/4 - anioDeEra/100);
+		int mesDesdeMarzo = (5*diaDelAnio + 2)/153;
+		return anioDeEra + era*400 + (mesDesdeMarzo>=10 ? 1 : 0);
+	}
+
+	/**
+	 * Devuelve el mes (1,...,12) de un día epoch.
+	 */
+	public static int getMes(int diaEpoch) {
+		int mesDesdeMarzo = (5*diaDelAnioDesdeMarzo(diaEpoch) + 2)/153;
+		return mesDesdeMarzo<10 ? mesDesdeMarzo + 3 : mesDesdeMarzo - 9;
+	}
+
+	/**
+	 * Devuelve el día del mes (1,...,31) de un día epoch.
+	 */
+	public static int getDia(int diaEpoch) {
+		int diaDelAnio = diaDelAnioDesdeMarzo(diaEpoch);
+		int mesDesdeMarzo = (5*diaDelAnio + 2)/153;
+		return diaDelAnio - (153*mesDesdeMarzo + 2)/5 + 1;
+	}
+
+	/**
+	 * Convierte un día epoch a texto en formato d/M/yyyy (p.ej: 18/9/1998), sin pasar por DateFormat.
+	 * @param diaEpoch Día epoch de una fecha correcta
+	 * @return Fecha formateada
+	 */
+	public static String formatear(int diaEpoch) {
+		int anio = getAnio(diaEpoch), mes = getMes(diaEpoch), dia = getDia(diaEpoch);
+		char[] texto = new char[10];
+		int i = 0;
+		if(dia>=10) texto[i++] = (char) ('0' + dia/10);
+		texto[i++] = (char) ('0' + dia%10);
+		texto[i++] = '/';
+		if(mes>=10) texto[i++] = (char) ('0' + mes/10);
+		texto[i++] = (char) ('0' + mes%10);
+		texto[i++] = '/';
+		if(anio<0 || anio>9999) return new String(texto, 0, i) + anio; // fuera del rango habitual
+		texto[i++] = (char) ('0' + anio/1000);
+		texto[i++] = (char) ('0' + anio/100%10);
+		texto[i++] = (char) ('0' + anio/10%10);
+		texto[i++] = (char) ('0' + anio%10);
+		return new String(texto, 0, i);
+	}
+	
+	/**
+	 * Calcula los años cumplidos entre dos fechas, igual que {@link java.time.Period#between} (p.ej. la edad de una persona).
+	 * @param desde Día epoch de la fecha inicial
+	 * @param hasta Día epoch de la fecha final
+	 * @return Número de años completos entre las dos fechas
+	 */
+	public static int aniosCumplidos(int desde, int hasta) {
+		if(hasta<desde) return -aniosCumplidos(hasta, desde);
+		int anios = getAnio(hasta) - getAnio(desde);
+		int mesDesde = getMes(desde), mesHasta = getMes(hasta);
+		if(mesHasta<mesDesde || (mesHasta==mesDesde && getDia(hasta)<getDia(desde))) anios--;
+		return anios;
+	}
+
+	/**
+	 * Número de días de un mes, teniendo en cuenta los años bisiestos.
+	 */
+	private static int diasDelMes(int anio, int mes) {
+		switch(mes) {
+		case 2:
+			boolean bisiesto = (anio%4==0 && anio%100!=0) || anio%400==0;
+			return bisiesto ? 29 : 28;
+		case 4: case 6: case 9: case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	private static int diaDelAnioDesdeMarzo(int diaEpoch) {
+		int z = diaEpoch + 719468;
+		int era = (z>=0 ? z : z - 146096) / 146097;
+		int diaDeEra = z - era*146097;
+		int anioDeEra = (diaDeEra - diaDeEra/1460 + diaDeEra/36524 - diaDeEra/146096) / 365;
+		return diaDeEra - (365*anioDeEra + anioDeEra/4 - anioDeEra/100);
+	}
+
+	private static boolean esDigito(char c) {
+		return c>='0' && c<='9';
+	}
+
+}
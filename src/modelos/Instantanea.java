@@ -0,0 +1,87 @@
+package modelos;
+
+/**
+ * Instantánea de los ficheros de la base de datos que se está escribiendo en segundo plano mientras los comandos
+ * siguen modificando los modelos (copia en escritura).
+ *
+ * Quien escribe abre una instantánea con {@link #abrir()} (con los comandos detenidos), recorre los elementos de cada fichero
+ * pidiendo su texto con {@link EscribibleEnFichero#getTextoInstantanea(Instantanea)} y la cierra con {@link #cerrar()}.
+ * Mientras está abierta, un modelo que se va a modificar y cuyo texto aún no se ha pedido guarda antes su texto
+ * sin modificar, que es el que se escribe. Así no hace falta copiar los mapas ni guardar el texto de todos los elementos:
+ * solo se guarda, y solo hasta que se escribe, el de los que se modifican durante la escritura.
+ *
+ * Cada modelo necesita un único campo para ello, que vale null, la última instantánea de la que se ha obtenido su texto
+ * o el texto guardado para la instantánea abierta (ver {@link #incluye(Object)}, {@link #guardar(String)} y {@link #textoGuardado(Object)}).
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public final class Instantanea {
+
+	private static volatile Instantanea actual;
+
+	private Instantanea() {
+
+	}
+
+	/**
+	 * Abre una instantánea nueva. Se debe llamar cuando ningún comando está modificando los modelos.
+	 * @return La instantánea
+	 */
+	public static synchronized Instantanea abrir() {
+		actual = new Instantanea();
+		return actual;
+	}
+
+	/**
+	 * Cierra la instantánea abierta: las modificaciones posteriores ya no guardan el texto anterior.
+	 */
+	public static synchronized void cerrar() {
+		actual = null;
+	}
+
+	/**
+	 * Instantánea abierta, o null si no se está escribiendo ninguna.
+	 */
+	public static Instantanea actual() {
+		return actual;
+	}
+
+	/**
+	 * Indica si el texto de un modelo ya se ha obtenido o guardado para esta instantánea.
+	 * @param estado Campo de la instantánea del modelo
+	 */
+	public boolean incluye(Object estado) {
+		return estado==this || estado instanceof TextoGuardado && ((TextoGuardado) estado).instantanea==this;
+	}
+
+	/**
+	 * Guarda el texto de un modelo antes de modificarlo.
+	 * @param texto Texto sin modificar
+	 * @return Nuevo valor del campo de la instantánea del modelo
+	 */
+	public Object guardar(String texto) {
+		return new TextoGuardado(this, texto);
+	}
+
+	/**
+	 * Texto guardado para esta instantánea, o null si el modelo no se ha modificado desde que se abrió.
+	 * @param estado Campo de la instantánea del modelo
+	 */
+	public String textoGuardado(Object estado) {
+		return estado instanceof TextoGuardado && ((TextoGuardado) estado).instantanea==this ? ((TextoGuardado) estado).texto : null;
+	}
+
+	/**
+	 * Texto de un modelo guardado antes de modificarlo.
+	 */
+	private static final class TextoGuardado {
+		final Instantanea instantanea;
+		final String texto;
+
+		TextoGuardado(Instantanea instantanea, String texto) {
+			this.instantanea = instantanea;
+			this.texto = texto;
+		}
+	}
+
+}
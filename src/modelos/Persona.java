@@ -1,14 +1,9 @@
 package modelos;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.time.LocalDate;
-import java.time.Period;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.util.Date;
+import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * Clase que modela a una persona. No se pueden crear objetos de Persona (clase abstracta), sino de Alumno o Profesor.
@@ -20,13 +15,20 @@ public abstract class Persona implements EscribibleEnFichero {
 
 	private String dni;
 	private String nombre;
-	private GregorianCalendar fechaNacimiento;
+	private int fechaNacimiento; // día epoch (ver la clase Fechas), o Fechas.FECHA_INCORRECTA
 	private String email;
 	
-	/**
-	 * Permite procesar las fechas en el formato d/M/yyyy; p.ej: 18/9/1998, 3/12/2011, 04/1/2010
-	 */
-	protected final static DateFormat dateFormat = new SimpleDateFormat("d/M/yyyy");
+	// Comprobar la letra de control de los DNI? Desactivado por defecto: los DNI de los ficheros de ejemplo son ficticios
+	private static final boolean COMPROBAR_LETRA_DNI = Boolean.getBoolean("centros.comprobarLetraDNI");
+	
+	// Límites de la fecha de nacimiento (días epoch): del 1/1/1960 al 1/1/2018, ambos incluidos
+	private static final int FECHA_NACIMIENTO_MINIMA = Fechas.diaEpoch(1960, 1, 1);
+	private static final int FECHA_NACIMIENTO_MAXIMA = Fechas.diaEpoch(2018, 1, 1);
+	
+	// Textos leídos que no son fechas correctas, que se vuelven a escribir tal cual: posición 0 la fecha de nacimiento,
+	// 1 la de ingreso (ver Alumno). Se guardan aparte, y no en un campo, para que las personas con las fechas correctas
+	// no ocupen más memoria. Persona no redefine equals ni hashCode, por lo que las claves son los propios objetos
+	private static final Map<Persona, String[]> FECHAS_INCORRECTAS = Collections.synchronizedMap(new WeakHashMap<Persona, String[]>());
 	
 	/**
 	 * Constructor de la clase Persona. No se pueden instanciar objetos de esta clase,
@@ -38,7 +40,8 @@ public abstract class Persona implements EscribibleEnFichero {
 	public Persona(String dni,String nombre,String fechaNacimiento) {
 		this.dni=dni;
 		this.nombre=nombre;
-		this.fechaNacimiento= fechaToGregorianCalendar(fechaNacimiento);
+		this.fechaNacimiento= Fechas.aDiaEpoch(fechaNacimiento);
+		if(this.fechaNacimiento==Fechas.FECHA_INCORRECTA) guardarFechaIncorrecta(0, fechaNacimiento);
 	}
 	
 	/**
@@ -52,7 +55,8 @@ public abstract class Persona implements EscribibleEnFichero {
 	public Persona(String dni,String nombre,String email,String fechaNacimiento) {
 		this.dni=dni;
 		this.nombre=nombre;
-		this.fechaNacimiento= fechaToGregorianCalendar(fechaNacimiento);
+		this.fechaNacimiento= Fechas.aDiaEpoch(fechaNacimiento);
+		if(this.fechaNacimiento==Fechas.FECHA_INCORRECTA) guardarFechaIncorrecta(0, fechaNacimiento);
 		this.email=email;
 	}
 	
@@ -83,115 +87,104 @@ public abstract class Persona implements EscribibleEnFichero {
 	
 	/**
 	 * Devuelve la fecha de nacimiento de la persona como un GregorianCalendar.
-	 * @return GregorianCalendar con la fecha de nacimiento.
+	 * La fecha se guarda internamente como un día epoch, por lo que cada llamada crea un GregorianCalendar nuevo.
+	 * @return GregorianCalendar con la fecha de nacimiento, o null si la leída del fichero no es una fecha correcta.
 	 */
 	public GregorianCalendar getFechaNacimiento() {
+		return fechaToGregorianCalendar(fechaNacimiento);
+	}
+	
+	/**
+	 * Devuelve la fecha de nacimiento de la persona como un día epoch (ver {@link Fechas}).
+	 * @return Día epoch de la fecha de nacimiento, o {@link Fechas#FECHA_INCORRECTA} si la leída del fichero no es una fecha correcta
+	 */
+	public int getDiaNacimiento() {
 		return fechaNacimiento;
 	}
 	
 	/**
 	 * Devuelve la fecha de nacimiento de la persona como una cadena de texto,
-	 * en formato d/M/yyyy.
+	 * en formato d/M/yyyy. Si la leída del fichero no es una fecha correcta, se devuelve tal como se leyó.
 	 * @return Fecha de nacimiento formateada
 	 */
 	public String getFechaNacimientoFormateada() {
-		return dateFormat.format(this.fechaNacimiento.getTime());
+		if(this.fechaNacimiento==Fechas.FECHA_INCORRECTA) return getFechaIncorrecta(0);
+		return Fechas.formatear(this.fechaNacimiento);
 	}
 	
 	// MÉTODOS AUXILIARES:
 	
 	/**
 	 * Comprueba si un DNI es válido o no. 
-	 * Para ello verifica su longitud y que sus ocho primeros dígitos sean numéricos.
+	 * Para ello verifica su longitud, que sus ocho primeros dígitos sean numéricos y que el último sea una letra mayúscula.
+	 * Si se arranca el programa con -Dcentros.comprobarLetraDNI=true, se comprueba también la letra de control (ver {@link ValidadorDNI}).
 	 * @param dni Número y letra de DNI
 	 * @return true si es válido, false si no lo es.
 	 */
 	public static boolean comprobarDNI(String dni) {
-		// Longitud correcta?
-		if(dni.length()!=9) return false;
-		
-		// 8 primeros caracteres numericos?
-		for (int i=0;i<8;i++) {
-			if (!Character.isDigit(dni.charAt(i))) return false;
-		}
-		
-		// Último dígito letra en mayúsculas?
-		if(!Character.isUpperCase(dni.charAt(8))) return false;
-
-		// Si cumple los tres requisitos anteriores:
-		return true;
+		return ValidadorDNI.comprobarFormato(dni) && (!COMPROBAR_LETRA_DNI || ValidadorDNI.comprobarLetra(dni));
 	}
 	
 	/**
 	 * Comprueba si una fecha de nacimiento es válida o no.
 	 * Para ello verifica que su formato sea correcto y que esté acotada entre 1960 y 2018.
+	 * Se puede llamar desde varios hilos a la vez.
 	 * @param fecha Fecha en formato d/M/yyyy
 	 * @return true si es correcta, false si no lo es.
 	 */
 	public static boolean comprobarFechaNacimiento(String fecha) {
+		// Si el formato es incorrecto o la fecha no existe (p.ej.: 35 de abril), devuelve FECHA_INCORRECTA (menor que cualquier fecha)
+		int dia = Fechas.aDiaEpoch(fecha);
 		
-		try {
-			dateFormat.setLenient(false); // desactivamos el lenient para poder comprobar si una fecha no existe (p.ej.: 35 de abril)
-			Date date = dateFormat.parse(fecha); // transforma la fecha de formato String a Date
-
-			// fecha acotada?
-			Date fechaMinima = dateFormat.parse("01/01/1960");
-			Date fechaMaxima = dateFormat.parse("01/01/2018");
-			if(date.before(fechaMinima) || date.after(fechaMaxima)) return false;
-			
-		} catch (ParseException e) {
-			
-			//Si hay un error al convertir la fecha es que su formato es incorrecto o la fecha es incorrecta
-			return false;
-		}
-		
-		// Si se ha llegado hasta aquí es que la fecha tiene el formato correcto
-		return true;
+		// fecha acotada?
+		return dia>=FECHA_NACIMIENTO_MINIMA && dia<=FECHA_NACIMIENTO_MAXIMA;
 		
 	}
 	
 	/**
 	 * Comprueba que la fecha de ingreso sea correcta, y que sea en una edad entre los 16 y los 60 años.
+	 * Se puede llamar desde varios hilos a la vez.
 	 * @param fechaNacimiento Fecha de nacimiento formateada
 	 * @param fechaIngreso Fecha de ingreso formateada
 	 * @return true si es correcta, false si no lo es.
 	 */
 	public static boolean comprobarFechaIngreso(String fechaNacimiento, String fechaIngreso) {
-
-		try {
-			DateTimeFormatter fmt = DateTimeFormatter.ofPattern("d/M/yyyy");
-			LocalDate nacimiento  =LocalDate.parse(fechaNacimiento,fmt);
-			LocalDate ingreso = LocalDate.parse(fechaIngreso,fmt);
-			
-			Period periodo = Period.between(nacimiento, ingreso);
-			if(periodo.getYears() < 16 || periodo.getYears() > 60) {
-				return false;
-			}
-			
-		} catch (DateTimeParseException e) {
+		int nacimiento = Fechas.aDiaEpoch(fechaNacimiento);
+		int ingreso = Fechas.aDiaEpoch(fechaIngreso);
+		if(nacimiento==Fechas.FECHA_INCORRECTA || ingreso==Fechas.FECHA_INCORRECTA) {
 			return false; // el formato de la fecha era incorrecto
 		}
 		
-		// Si se ha llegado hasta aquí es que la fecha tiene el formato correcto
-		return true;
+		int edad = Fechas.aniosCumplidos(nacimiento, ingreso);
+		return edad>=16 && edad<=60;
 		
 	}
 	
 	/**
-	 * Convierte una fecha formateada a un GregorianCalendar.
-	 * @param fecha Fecha formateada. Es necesario comprobarla antes con {@link #comprobarFechaNacimiento(String)} de convertirla.
-	 * @return GregorianCalendar con la fecha formateada.
+	 * Guarda el texto de una fecha leída que no es correcta, para volver a escribirlo tal cual.
+	 * @param posicion 0 para la fecha de nacimiento, 1 para la de ingreso
+	 * @param texto Texto leído
 	 */
-	protected static GregorianCalendar fechaToGregorianCalendar(String fecha) {
-		try {
-			Date date = dateFormat.parse(fecha);
-			GregorianCalendar gc = new GregorianCalendar();
-			gc.setTime(date);
-			return gc;
-		} catch (ParseException e) {
-			// Deberia de haberse comprobado previamente con #comprobarFecha()
-			return null;
-		}
-
+	protected void guardarFechaIncorrecta(int posicion, String texto) {
+		FECHAS_INCORRECTAS.computeIfAbsent(this, p -> new String[2])[posicion] = texto;
+	}
+	
+	/**
+	 * Devuelve el texto de una fecha leída que no es correcta, guardado con {@link #guardarFechaIncorrecta(int, String)}.
+	 * @param posicion 0 para la fecha de nacimiento, 1 para la de ingreso
+	 */
+	protected String getFechaIncorrecta(int posicion) {
+		String[] textos = FECHAS_INCORRECTAS.get(this);
+		return textos!=null ? textos[posicion] : null;
+	}
+	
+	/**
+	 * Convierte un día epoch a un GregorianCalendar.
+	 * @param diaEpoch Día epoch (ver {@link Fechas})
+	 * @return GregorianCalendar con esa fecha, o null si es {@link Fechas#FECHA_INCORRECTA}
+	 */
+	protected static GregorianCalendar fechaToGregorianCalendar(int diaEpoch) {
+		if(diaEpoch==Fechas.FECHA_INCORRECTA) return null;
+		return new GregorianCalendar(Fechas.getAnio(diaEpoch), Fechas.getMes(diaEpoch) - 1, Fechas.getDia(diaEpoch));
 	}
 }
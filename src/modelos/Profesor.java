@@ -1,6 +1,7 @@
 package modelos;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Clase que modela a un profesor, que a su vez heredda los métodos y atributos de la clase Persona.
@@ -14,7 +15,17 @@ public class Profesor extends Persona implements EscribibleEnFichero {
 	private String departamento;
 	private ArrayList<DocenciaImpartida> docenciaImpartida;
 	
+	// Número de grupos impartidos por asignatura y tipo de grupo, solo de las que imparte: cada entrada empaqueta
+	// la clave 2*id de la asignatura (+1 si es B) en los 32 bits altos y el contador en los bajos
+	private long[] gruposImpartidos = SIN_GRUPOS;
+	private volatile String siglasProfesor; // iniciales ya calculadas (ver getSiglasProfesor)
+	private Object instantanea; // última instantánea de la que se ha obtenido el texto, o el texto guardado para ella (ver Instantanea)
+	
 	private static final String NOMBRE_FICHERO = "profesores.txt";
+	private static final long[] SIN_GRUPOS = new long[0];
+	
+	// Comprobar los contadores de grupos frente a un recuento completo de la docencia impartida? (-Dcentros.comprobarContadores=true)
+	private static final boolean COMPROBAR_CONTADORES = Boolean.getBoolean("centros.comprobarContadores");
 	
 	/**
 	 * Constructor de la clase Profesor. Permite crear un objeto de la clase Profesor.
@@ -45,6 +56,7 @@ public class Profesor extends Persona implements EscribibleEnFichero {
 					di = new DocenciaImpartida(campos[0], campos[1].charAt(0), Character.getNumericValue(campos[1].charAt(1)));
 				}
 				this.docenciaImpartida.add(di);	
+				contarGrupo(di.getSiglas(), di.getTipoGrupo());
 			
 		}}
 		
@@ -61,7 +73,78 @@ public class Profesor extends Persona implements EscribibleEnFichero {
 	 * @param idGrupo Identificador del grupo: 1,...
 	 */
 	public void asignarGrupo(String siglas, char tipoGrupo, int idGrupo) {
+		antesDeModificar();
 		this.docenciaImpartida.add(new DocenciaImpartida(siglas, tipoGrupo, idGrupo));
+		contarGrupo(siglas, tipoGrupo);
+	}
+	
+	/**
+	 * Devuelve el número de grupos de una asignatura y tipo de grupo que imparte el profesor, en tiempo constante.
+	 * El contador se mantiene al cargar el profesor y al asignarle grupos con {@link #asignarGrupo(String, char, int)}.
+	 * Si se arranca el programa con -Dcentros.comprobarContadores=true, se comprueba además que coincida con un recuento
+	 * completo de la docencia impartida; si no es así, se muestra la diferencia por la salida de error y se devuelve
+	 * el recuento, sin interrumpir el comando.
+	 * @param siglas Siglas de la asignatura
+	 * @param tipoGrupo Tipo de grupo: A o B
+	 * @return Número de grupos impartidos
+	 */
+	public int getNumeroGrupos(String siglas, char tipoGrupo) {
+		if(tipoGrupo!='A' && tipoGrupo!='B') return recontarGrupos(siglas, tipoGrupo); // tipo de grupo sin contador
+		
+		// Se busca el identificador sin asignarle uno nuevo: unas siglas sin identificador no tienen contador
+		int id = Asignatura.buscarId(siglas);
+		int posicion = id>=0 ? posicionContador(claveContador(id, tipoGrupo)) : -1;
+		int contador = posicion>=0 ? (int) gruposImpartidos[posicion] : 0;
+		if(COMPROBAR_CONTADORES) {
+			int recuento = recontarGrupos(siglas, tipoGrupo);
+			if(recuento!=contador) {
+				System.err.println("Contador de grupos incorrecto para el profesor " + getDni() + " en "
+						+ siglas + " " + tipoGrupo + ": " + contador + " (recuento: " + recuento + ")");
+				return recuento;
+			}
+		}
+		return contador;
+	}
+	
+	/**
+	 * Cuenta los grupos de una asignatura y tipo de grupo recorriendo toda la docencia impartida.
+	 */
+	private int recontarGrupos(String siglas, char tipoGrupo) {
+		int total = 0;
+		for(DocenciaImpartida di: docenciaImpartida) {
+			if(di.getSiglas().equals(siglas) && di.getTipoGrupo()==tipoGrupo) total++;
+		}
+		return total;
+	}
+	
+	private void contarGrupo(String siglas, char tipoGrupo) {
+		if(tipoGrupo!='A' && tipoGrupo!='B') return;
+		int clave = claveContador(Asignatura.getId(siglas), tipoGrupo);
+		int posicion = posicionContador(clave);
+		if(posicion<0) {
+			// Primer grupo de esta asignatura y tipo: el array crece de uno en uno, ya que cada profesor imparte pocas
+			posicion = gruposImpartidos.length;
+			gruposImpartidos = Arrays.copyOf(gruposImpartidos, posicion + 1);
+			gruposImpartidos[posicion] = (long) clave << 32;
+		}
+		gruposImpartidos[posicion]++;
+	}
+	
+	/**
+	 * Posición en gruposImpartidos del contador con una clave, o -1 si el profesor no imparte esa asignatura y tipo de grupo.
+	 */
+	private int posicionContador(int clave) {
+		for(int i = 0; i<gruposImpartidos.length; i++) {
+			if((int) (gruposImpartidos[i] >>> 32)==clave) return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Clave del contador de una asignatura (por su identificador, ver {@link Asignatura#getId(String)}) y tipo de grupo A o B.
+	 */
+	private static int claveContador(int idAsignatura, char tipoGrupo) {
+		return 2*idAsignatura + (tipoGrupo=='B' ? 1 : 0);
 	}
 	
 	/**
@@ -87,15 +170,40 @@ public class Profesor extends Persona implements EscribibleEnFichero {
 	
 	/**
 	 * Devuelve las siglas de un profesor, es decir, las iniciales de su nombre y apellidos separadas por un punto.
+	 * Se calculan la primera vez que se piden y se guardan, ya que el nombre del profesor no cambia.
 	 */
 	public String getSiglasProfesor() {
-		String[] siglas = this.getNombre().split("\\s+");
-		StringBuffer buffer = new StringBuffer();
-		for(String parte: siglas) {
-			if(!parte.trim().equals(","))
-				buffer.append(parte.trim().charAt(0)+".");
+		String siglas = siglasProfesor;
+		if(siglas==null) {
+			siglas = calcularSiglas(getNombre());
+			siglasProfesor = siglas;
+		}
+		return siglas;
+	}
+	
+	/**
+	 * Calcula las iniciales de un nombre: la primera letra de cada palabra (separadas por espacios) seguida de un punto.
+	 * Las palabras formadas solo por una coma se ignoran.
+	 */
+	private static String calcularSiglas(String nombre) {
+		StringBuilder sb = new StringBuilder(8);
+		int longitud = nombre.length();
+		int i = 0;
+		while(i<longitud) {
+			// Salta los espacios hasta el comienzo de la siguiente palabra
+			while(i<longitud && esEspacio(nombre.charAt(i))) i++;
+			if(i==longitud) break;
+			int inicio = i;
+			while(i<longitud && !esEspacio(nombre.charAt(i))) i++;
+			
+			if(i - inicio!=1 || nombre.charAt(inicio)!=',') sb.append(nombre.charAt(inicio)).append('.');
 		}
-		return new String(buffer);
+		return sb.toString();
+	}
+	
+	// Mismos caracteres que \s en una expresión regular
+	private static boolean esEspacio(char c) {
+		return c==' ' || c=='\t' || c=='\n' || c=='\u000B' || c=='\f' || c=='\r';
 	}
 	
 	/**
@@ -126,6 +234,30 @@ public class Profesor extends Persona implements EscribibleEnFichero {
 		
 	}
 	
+	/**
+	 * Devuelve el texto del profesor tal como era al abrir una instantánea (ver {@link Instantanea}):
+	 * el guardado antes de modificarlo, o el actual si no se ha modificado desde que se abrió.
+	 * Implementado por la interfaz {@link EscribibleEnFichero}.
+	 */
+	public synchronized String getTextoInstantanea(Instantanea instantanea) {
+		String cadena = instantanea.textoGuardado(this.instantanea);
+		this.instantanea = instantanea;
+		return cadena!=null ? cadena : toTexto();
+	}
+	
+	/**
+	 * Si se está escribiendo una instantánea que aún no incluye al profesor, guarda su texto antes de modificarlo.
+	 */
+	private void antesDeModificar() {
+		Instantanea abierta = Instantanea.actual();
+		if(abierta!=null) guardarTextoInstantanea(abierta);
+	}
+	
+	private synchronized void guardarTextoInstantanea(Instantanea abierta) {
+		if(abierta.incluye(instantanea)) return; // ya se ha escrito o guardado
+		instantanea = abierta.guardar(toTexto());
+	}
+	
 	/**
 	 * Devuelve el nombre del fichero de texto en el que se guardan los profesores.
 	 * Implementado por la interfaz {@link EscribibleEnFichero}.
@@ -0,0 +1,145 @@
+package modelos;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Validación de DNI, tanto de uno en uno (String) como por lotes.
+ * Un DNI es válido si tiene 8 dígitos seguidos de una letra mayúscula;
+ * opcionalmente se comprueba también que la letra sea la de control (número del DNI módulo 23).
+ *
+ * La validación por lotes trabaja sobre un buffer de bytes con registros de 9 bytes consecutivos (un DNI en ASCII por registro),
+ * tal como se leen de un fichero. Los 8 dígitos de cada registro se comprueban y se convierten a número a la vez,
+ * como un único long (técnica SWAR), sin bifurcaciones por dígito ni creación de Strings.
+ * Ningún fichero de la base de datos tiene ese formato, por lo que de momento solo la usa benchmarks.ValidacionDNI:
+ * el programa valida los DNI de uno en uno con {@link #comprobarFormato(String)} al insertar personas,
+ * y los ficheros de notas no se validan, ya que cada DNI se busca directamente entre los alumnos (ver docencia.LectorNotas).
+ * @author Guillermo Barreiro Fernández
+ *
+ */
+public final class ValidadorDNI {
+
+	/**
+	 * Longitud de un DNI (y de cada registro en la validación por lotes): 8 dígitos y una letra.
+	 */
+	public static final int LONGITUD = 9;
+
+	private static final String LETRAS_CONTROL = "TRWAGMYFPDXBNJZSQVHLCKE";
+	private static final byte[] LETRAS_CONTROL_ASCII = LETRAS_CONTROL.getBytes(StandardCharsets.US_ASCII);
+
+	// Constantes para procesar 8 bytes a la vez
+	private static final long CEROS = 0x3030303030303030L; // '0' en cada byte
+	private static final long NIBBLES_ALTOS = 0xF0F0F0F0F0F0F0F0L;
+	private static final long SEISES = 0x0606060606060606L;
+
+	// La clase no se puede instanciar:
+	private ValidadorDNI() {
+
+	}
+
+	/**
+	 * Comprueba el formato de un DNI: longitud 9, ocho primeros caracteres numéricos y último carácter una letra mayúscula.
+	 * @param dni Número y letra de DNI
+	 * @return true si el formato es correcto
+	 */
+	public static boolean comprobarFormato(String dni) {
+		// Longitud correcta?
+		if(dni.length()!=LONGITUD) return false;
+
+		// 8 primeros caracteres numericos?
+		for (int i=0;i<8;i++) {
+			if (!Character.isDigit(dni.charAt(i))) return false;
+		}
+
+		// Último dígito letra en mayúsculas?
+		return Character.isUpperCase(dni.charAt(8));
+	}
+
+	/**
+	 * Comprueba que la letra de un DNI sea la de control, es decir, la que corresponde a su número módulo 23.
+	 * El formato del DNI debe haberse comprobado antes con {@link #comprobarFormato(String)}.
+	 * @param dni Número y letra de DNI
+	 * @return true si la letra es la correcta
+	 */
+	public static boolean comprobarLetra(String dni) {
+		int numero = 0;
+		for(int i = 0; i<8; i++) numero = numero*10 + Character.digit(dni.charAt(i), 10);
+		return dni.charAt(8)==LETRAS_CONTROL.charAt(numero%23);
+	}
+
+	/**
+	 * Valida un lote de DNI almacenados como registros de 9 bytes consecutivos.
+	 * @param registros Buffer con los DNI en ASCII
+	 * @param desde Posición del primer registro en el buffer
+	 * @param numero Número de registros a validar
+	 * @param comprobarLetra Si además del formato se comprueba la letra de control
+	 * @param validos Bitset de salida, con al menos numero bits: el bit i queda a 1 si el registro i es válido y a 0 si no
+	 * @return Número de registros válidos
+	 */
+	public static int validar(byte[] registros, int desde, int numero, boolean comprobarLetra, long[] validos) {
+		int total = 0;
+		for(int palabra = 0; palabra*64<numero; palabra++) {
+			long bits = 0;
+			int fin = Math.min(64, numero - palabra*64);
+			for(int j = 0; j<fin; j++) {
+				int posicion = desde + (palabra*64 + j)*LONGITUD;
+				long valido = validarRegistro(registros, posicion, comprobarLetra) ? 1L : 0L;
+				bits |= valido << j;
+			}
+			validos[palabra] = bits;
+			total += Long.bitCount(bits);
+		}
+		return total;
+	}
+
+	/**
+	 * Valida un único registro de 9 bytes.
+	 * @param registros Buffer con los DNI en ASCII
+	 * @param posicion Posición del registro en el buffer
+	 * @param comprobarLetra Si además del formato se comprueba la letra de control
+	 * @return true si el DNI es válido
+	 */
+	public static boolean validarRegistro(byte[] registros, int posicion, boolean comprobarLetra) {
+		long digitos = leerLong(registros, posicion);
+		int letra = registros[posicion + 8];
+
+		// Todos los bytes entre '0' y '9'? Nibble alto igual a 3 y sin desbordarse al sumarle 6
+		boolean formato = ((digitos & NIBBLES_ALTOS) == CEROS)
+				& (((digitos + SEISES) & NIBBLES_ALTOS) == CEROS)
+				& letra>='A' & letra<='Z';
+
+		// Se calcula siempre la letra de control (aunque el formato sea incorrecto) para evitar saltos difíciles de predecir
+		boolean letraCorrecta = letra==LETRAS_CONTROL_ASCII[(numeroDe8Digitos(digitos) & 0x7FFFFFFF)%23];
+		return formato & (letraCorrecta | !comprobarLetra);
+	}
+
+	/**
+	 * Obtiene el número de un DNI almacenado como registro de 9 bytes, sin comprobar su formato.
+	 * @param registros Buffer con los DNI en ASCII
+	 * @param posicion Posición del registro en el buffer
+	 * @return El número formado por los 8 primeros bytes
+	 */
+	public static int numero(byte[] registros, int posicion) {
+		return numeroDe8Digitos(leerLong(registros, posicion));
+	}
+
+	/**
+	 * Convierte 8 dígitos ASCII empaquetados en un long (el primero en el byte menos significativo) a su valor numérico.
+	 * Se combinan las cifras de dos en dos, de cuatro en cuatro y de ocho en ocho: tres multiplicaciones en lugar de ocho.
+	 */
+	private static int numeroDe8Digitos(long digitos) {
+		long x = digitos - CEROS;
+		x = (x * 10 + (x >>> 8)) & 0x00FF00FF00FF00FFL;
+		x = (x * 100 + (x >>> 16)) & 0x0000FFFF0000FFFFL;
+		x = (x * 10000 + (x >>> 32)) & 0xFFFFFFFFL;
+		return (int) x;
+	}
+
+	/**
+	 * Lee 8 bytes del buffer como un long little-endian.
+	 */
+	private static long leerLong(byte[] b, int i) {
+		return (b[i] & 0xFFL) | (b[i+1] & 0xFFL) << 8 | (b[i+2] & 0xFFL) << 16 | (b[i+3] & 0xFFL) << 24
+				| (b[i+4] & 0xFFL) << 32 | (b[i+5] & 0xFFL) << 40 | (b[i+6] & 0xFFL) << 48 | (b[i+7] & 0xFFL) << 56;
+	}
+
+}